@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.polyworld.biome.WhittakerBiome;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The level checks done on every biome change: which level belongs to the new biome, and whether the player still has
+ * to discover it. Each invocation checks a sequence of random biome changes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LevelLookupBenchmark {
+    private static final int BIOME_CHANGES = 1024;
+
+    private final WhittakerBiome[] biomeChanges = new WhittakerBiome[BIOME_CHANGES];
+    private final ProgressTrackingComponent progress = new ProgressTrackingComponent();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        WhittakerBiome[] biomes = WhittakerBiome.values();
+        for (int i = 0; i < BIOME_CHANGES; i++) {
+            biomeChanges[i] = biomes[random.nextInt(biomes.length)];
+        }
+        progress.setLevelDiscovered(LostLevel.WELL);
+        progress.setLevelFound(LostLevel.WELL);
+        progress.setLevelDiscovered(LostLevel.TEMPLE);
+    }
+
+    /**
+     * @return the number of biome changes into a level the player could discover
+     */
+    @Benchmark
+    public int levelLookups() {
+        int undiscovered = 0;
+        for (WhittakerBiome biome : biomeChanges) {
+            LostLevel level = LostLevel.forBiome(biome);
+            if (level != null && !progress.isLevelDiscovered(level)
+                    && (level == LostLevel.WELL || progress.isWellFound())) {
+                undiscovered++;
+            }
+        }
+        return undiscovered;
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spawn search of {@link LostWorldGenerator} on synthetic graphs: the spawn candidate search over several graphs,
+ * and the two-hop biome neighbourhood scan of a single graph.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpawnSearchBenchmark {
+    // distance between the centres of two neighbouring regions, about the size of a voronoi region in the Lost world
+    private static final float REGION_SPACING = 40;
+
+    @Param({"16", "32"})
+    public int regionsPerAxis;
+    @Param({"9"})
+    public int graphCount;
+
+    private final List<SyntheticGraph> graphs = new ArrayList<>();
+    private BlockRegion searchArea;
+    private int nextGraph;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int graphsPerAxis = (int) Math.ceil(Math.sqrt(graphCount));
+        float graphSize = regionsPerAxis * REGION_SPACING;
+        for (int i = 0; i < graphCount; i++) {
+            graphs.add(new SyntheticGraph(random, regionsPerAxis, REGION_SPACING, (i % graphsPerAxis) * graphSize,
+                    (i / graphsPerAxis) * graphSize));
+        }
+        int extent = (int) (graphsPerAxis * graphSize);
+        searchArea = new BlockRegion(0, 0, 0, extent, 0, extent);
+    }
+
+    /**
+     * Collects the spawn candidates of all graphs and picks the one nearest to the centre, like a spawn search whose
+     * graphs have been checked before.
+     */
+    @Benchmark
+    public GraphRegion spawnCandidates() {
+        NearestPointIndex<GraphRegion> candidates = new NearestPointIndex<>(250);
+        List<GraphRegion> spawnRegions = new ArrayList<>();
+        for (SyntheticGraph graph : graphs) {
+            spawnRegions.clear();
+            SpawnRegionFinder.collectSpawnRegions(graph.graph, graph.biomeModel, searchArea, spawnRegions);
+            for (GraphRegion region : spawnRegions) {
+                candidates.add(region.getCenter().x(), region.getCenter().y(), region);
+            }
+        }
+        return candidates.findNearest(searchArea.getSizeX() / 2f, searchArea.getSizeZ() / 2f, Float.MAX_VALUE);
+    }
+
+    /**
+     * Classifies the surroundings of every region of a graph which hasn't been checked before.
+     */
+    @Benchmark
+    public BiomeNeighborhood neighborhoodScan() {
+        SyntheticGraph graph = graphs.get(nextGraph);
+        nextGraph = (nextGraph + 1) % graphs.size();
+        return BiomeNeighborhood.compute(graph.graph, graph.biomeModel);
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2f;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.biome.WhittakerBiome;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * A square grid of regions with random biomes, standing in for a generated {@link Graph} and its {@link BiomeModel}.
+ * Every region is a neighbour of the eight regions around it. Only the graph itself is a mock, its regions and biomes
+ * are plain objects, so they don't distort what is measured.
+ */
+final class SyntheticGraph {
+    final Graph graph = mock(Graph.class);
+    final BiomeModel biomeModel;
+    final List<GraphRegion> regions = new ArrayList<>();
+
+    /**
+     * @param size the number of regions along each axis
+     * @param spacing the distance between the centres of two neighbouring regions
+     * @param originX the x coordinate of the centre of the first region
+     * @param originZ the z coordinate of the centre of the first region
+     */
+    SyntheticGraph(Random random, int size, float spacing, float originX, float originZ) {
+        WhittakerBiome[] biomes = WhittakerBiome.values();
+        Map<GraphRegion, WhittakerBiome> biomeOf = new IdentityHashMap<>();
+        GraphRegion[][] grid = new GraphRegion[size][size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                GraphRegion region = new GraphRegion(regions.size(),
+                        new Vector2f(originX + x * spacing, originZ + z * spacing));
+                grid[x][z] = region;
+                regions.add(region);
+                biomeOf.put(region, biomes[random.nextInt(biomes.length)]);
+            }
+        }
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+                        int nz = z + dz;
+                        if ((dx != 0 || dz != 0) && nx >= 0 && nx < size && nz >= 0 && nz < size) {
+                            grid[x][z].addNeigbor(grid[nx][nz]);
+                        }
+                    }
+                }
+            }
+        }
+        doReturn(regions).when(graph).getRegions();
+        biomeModel = biomeOf::get;
+    }
+}
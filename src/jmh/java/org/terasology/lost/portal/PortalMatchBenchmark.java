@@ -0,0 +1,152 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.joml.Vector3i;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of the portal frame against an in-memory block store. The store holds a complete frame, a complete frame
+ * rotated by 90 degrees, a frame missing its top and a bare key, which are checked in turn, both with the pattern and
+ * with the frame check it replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PortalMatchBenchmark {
+    static final short AIR = 0;
+    static final short PLASMA = 1;
+    static final short FACADE = 2;
+    static final short KEY = 3;
+    static final String[] BLOCK_URIS = {"engine:air", "Lost:ShatteredPlasma", "Lost:FacadeOfTruth", "Lost:Arkenstone"};
+
+    private static final int SIZE = 32;
+    private static final int HEIGHT = 8;
+
+    final short[] blocks = new short[SIZE * HEIGHT * SIZE];
+    final Vector3i[] keys = {new Vector3i(4, 1, 4), new Vector3i(12, 1, 4), new Vector3i(20, 1, 4),
+            new Vector3i(28, 1, 4)};
+    private MultiblockPattern pattern;
+
+    @Setup
+    public void setUp() {
+        buildFrame(keys[0], false, true);
+        buildFrame(keys[1], true, true);
+        buildFrame(keys[2], false, false);
+        set(keys[3].x, keys[3].y, keys[3].z, KEY);
+
+        pattern = LostPortalSystem.createFramePattern(PLASMA, FACADE);
+    }
+
+    /**
+     * @return the number of complete frames found
+     */
+    @Benchmark
+    public int patternMatch() {
+        int complete = 0;
+        for (Vector3i key : keys) {
+            if (pattern.getMatchingRotation(this::getBlockId, key) >= 0) {
+                complete++;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * The frame check before {@link MultiblockPattern}: every block is compared by building its URI string and
+     * comparing it case-insensitively, plasma first and then both rotations of the facade. The real check also looked
+     * up a block entity for every block, so this is a lower bound of its cost.
+     *
+     * @return the number of complete frames found
+     */
+    @Benchmark
+    public int legacyFrameCheck() {
+        int complete = 0;
+        for (Vector3i key : keys) {
+            if (isLegacyFrame(key)) {
+                complete++;
+            }
+        }
+        return complete;
+    }
+
+    private boolean isLegacyFrame(Vector3i key) {
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if ((i != 0 || j != 0) && !isBlock(key.x + i, key.y, key.z + j, "Lost:ShatteredPlasma")) {
+                    return false;
+                }
+            }
+        }
+        return isLegacyFacade(key, 1, 0) || isLegacyFacade(key, 0, 1);
+    }
+
+    private boolean isLegacyFacade(Vector3i key, int stepX, int stepZ) {
+        for (int i = -1; i <= 1; i += 2) {
+            for (int y = 1; y <= 2; y++) {
+                if (!isBlock(key.x + i * stepX, key.y + y, key.z + i * stepZ, "Lost:FacadeOfTruth")) {
+                    return false;
+                }
+            }
+        }
+        for (int i = -1; i <= 1; i++) {
+            if (!isBlock(key.x + i * stepX, key.y + 3, key.z + i * stepZ, "Lost:FacadeOfTruth")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBlock(int x, int y, int z, String uri) {
+        // the URI was rebuilt from its parts on every access
+        String[] parts = BLOCK_URIS[getBlockId(x, y, z)].split(":", 2);
+        String blockUri = parts.length == 2 ? parts[0] + ":" + parts[1] : parts[0];
+        return blockUri.equalsIgnoreCase(uri);
+    }
+
+    short getBlockId(int x, int y, int z) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= HEIGHT || z < 0 || z >= SIZE) {
+            return AIR;
+        }
+        return blocks[(y * SIZE + z) * SIZE + x];
+    }
+
+    private void set(int x, int y, int z, short block) {
+        blocks[(y * SIZE + z) * SIZE + x] = block;
+    }
+
+    private void buildFrame(Vector3i key, boolean rotated, boolean withTop) {
+        set(key.x, key.y, key.z, KEY);
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (i != 0 || j != 0) {
+                    set(key.x + i, key.y, key.z + j, PLASMA);
+                }
+            }
+        }
+        for (int i = -1; i <= 1; i += 2) {
+            for (int y = 1; y <= 2; y++) {
+                set(key.x + (rotated ? 0 : i), key.y + y, key.z + (rotated ? i : 0), FACADE);
+            }
+        }
+        if (withTop) {
+            for (int i = -1; i <= 1; i++) {
+                set(key.x + (rotated ? 0 : i), key.y + 3, key.z + (rotated ? i : 0), FACADE);
+            }
+        }
+    }
+}
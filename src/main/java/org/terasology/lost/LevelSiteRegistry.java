@@ -0,0 +1,118 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.joml.Vector2i;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.WorldComponent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the level sites completed in the world, i.e. the generated sites whose chests and traps have been
+ * spawned, so that players entering a biome close to such a site just discover it. Sites are persisted in the
+ * {@link LevelSitesComponent} of the world entity and indexed in a grid of {@link #CELL_SIZE} sized cells for nearby
+ * lookups.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(LevelSiteRegistry.class)
+public class LevelSiteRegistry extends BaseComponentSystem {
+    // edge length of the grid cells sites are indexed by
+    public static final int CELL_SIZE = 256;
+
+    @In
+    private EntityManager entityManager;
+
+    private EntityRef worldEntity = EntityRef.NULL;
+    private LevelSitesComponent sites = new LevelSitesComponent();
+    // indices of the sites per grid cell
+    private final Map<Vector2i, List<Integer>> cells = new HashMap<>();
+
+    @Override
+    public void postBegin() {
+        for (EntityRef world : entityManager.getEntitiesWith(WorldComponent.class)) {
+            worldEntity = world;
+            break;
+        }
+        LevelSitesComponent stored = worldEntity.getComponent(LevelSitesComponent.class);
+        if (stored != null) {
+            sites = stored;
+        }
+        for (int i = 0; i < sites.positions.size(); i++) {
+            index(i);
+        }
+    }
+
+    /**
+     * Returns the site of the given level closest to the given column, if it is within the given distance.
+     *
+     * @return the position of the site or null if there is none nearby
+     */
+    public Vector3ic findSite(LostLevel level, int x, int z, int maxDistance) {
+        Vector3ic closest = null;
+        long closestDistance = (long) maxDistance * maxDistance;
+        int minCellX = Math.floorDiv(x - maxDistance, CELL_SIZE);
+        int maxCellX = Math.floorDiv(x + maxDistance, CELL_SIZE);
+        int minCellZ = Math.floorDiv(z - maxDistance, CELL_SIZE);
+        int maxCellZ = Math.floorDiv(z + maxDistance, CELL_SIZE);
+        Vector2i cell = new Vector2i();
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                List<Integer> cellSites = cells.get(cell.set(cellX, cellZ));
+                if (cellSites == null) {
+                    continue;
+                }
+                for (int site : cellSites) {
+                    if (sites.levels.get(site) != level.ordinal()) {
+                        continue;
+                    }
+                    Vector3i position = sites.positions.get(site);
+                    long dx = position.x - x;
+                    long dz = position.z - z;
+                    if (dx * dx + dz * dz <= closestDistance) {
+                        closestDistance = dx * dx + dz * dz;
+                        closest = position;
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Registers a newly completed level site and stores it with the world.
+     */
+    public void addSite(LostLevel level, Vector3ic position) {
+        sites.levels.add(level.ordinal());
+        sites.positions.add(new Vector3i(position));
+        index(sites.positions.size() - 1);
+        if (worldEntity.exists()) {
+            worldEntity.addOrSaveComponent(sites);
+        }
+    }
+
+    /**
+     * @return the number of level sites in the world
+     */
+    public int getSiteCount() {
+        return sites.positions.size();
+    }
+
+    private void index(int site) {
+        Vector3i position = sites.positions.get(site);
+        Vector2i cell = new Vector2i(Math.floorDiv(position.x, CELL_SIZE), Math.floorDiv(position.z, CELL_SIZE));
+        cells.computeIfAbsent(cell, key -> new ArrayList<>()).add(site);
+    }
+}
@@ -0,0 +1,29 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import com.google.common.collect.Lists;
+import org.joml.Vector3i;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the level sites completed in the world, shared by all players. Attached to the world entity, site i is the
+ * level with index levels[i] spawned at positions[i].
+ */
+public class LevelSitesComponent implements Component<LevelSitesComponent> {
+    public List<Integer> levels = new ArrayList<>();
+    public List<Vector3i> positions = new ArrayList<>();
+
+    @Override
+    public void copyFrom(LevelSitesComponent other) {
+        this.levels = Lists.newArrayList(other.levels);
+        this.positions = new ArrayList<>();
+        for (Vector3i position : other.positions) {
+            this.positions.add(new Vector3i(position));
+        }
+    }
+}
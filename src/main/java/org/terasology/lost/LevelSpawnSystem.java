@@ -3,46 +3,63 @@
 
 package org.terasology.lost;
 
-import org.joml.RoundingMode;
-import org.joml.Vector2fc;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.biomesAPI.OnBiomeChangedEvent;
-import org.terasology.engine.entitySystem.entity.EntityBuilder;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
-import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.location.LocationComponent;
-import org.terasology.engine.math.Side;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BlockRegion;
-import org.terasology.engine.world.generation.facets.ElevationFacet;
-import org.terasology.engine.world.generation.facets.SurfacesFacet;
 import org.terasology.gestalt.assets.management.AssetManager;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
-import org.terasology.lost.generator.LostWorldGenerator;
+import org.terasology.lost.generator.LostWorldQueryService;
+import org.terasology.lost.metrics.LostMetrics;
+import org.terasology.lost.metrics.SimulatedPlayerComponent;
 import org.terasology.module.inventory.systems.InventoryManager;
-import org.terasology.polyworld.graph.GraphFacet;
 import org.terasology.polyworld.graph.GraphRegion;
-import org.terasology.structureTemplates.events.SpawnStructureEvent;
-import org.terasology.structureTemplates.util.BlockRegionTransform;
 
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Creates the levels/challenges for the Lost gameplay. On every biome change event it is checked whether the it is
- * suitable for a level spawn. If yes, the challenge corresponding to the biome is spawned in the centre of the voronoi
- * {@link GraphRegion} entered The challenges start spawning in their respective biomes once the book in the well has been
- * discovered
+ * Tracks the discovery of the levels/challenges of the Lost gameplay. The blocks of the levels are generated with the
+ * world by the {@link org.terasology.lost.generator.LevelSiteRasterizer}, one site per level in every graph. On every
+ * biome change event it is checked whether a level of the biome is close by; if yes, the player discovers it. The
+ * challenges are only discovered once the book in the well has been found.
+ * <p>
+ * Sites are looked up on worker threads through the {@link LostWorldQueryService}, discoveries are handled on the game
+ * thread once the site is known. The first discovery of a site spawns the parts of its structure template that need
+ * entities (chests, traps, ...), as soon as the whole site is loaded. Such completed sites are shared by all players
+ * through the {@link LevelSiteRegistry}.
+ * <p>
+ * To have the site ready by the time a player arrives, the system also looks ahead: every
+ * {@link #LOOK_AHEAD_INTERVAL} seconds the position of each player is projected {@link #LOOK_AHEAD_TIME} seconds
+ * along their movement. If that position lies in another voronoi region with a level the player hasn't discovered,
+ * its site is looked up in the background, which generates the facets around it. The site is then staged, so that the
+ * biome change finds it without a lookup. Predictions can be wrong, so nothing of a predicted site is committed: its
+ * entities are only spawned, and the site only registered, once a player has really discovered it. Until then a
+ * predicted site is dropped again if it isn't discovered within {@link #PREDICTION_TIMEOUT} seconds or no player is
+ * within {@link #PREDICTION_RANGE} of it anymore, and at most {@link #MAX_PREDICTED_SITES} are staged at once.
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class LevelSpawnSystem extends BaseComponentSystem {
+public class LevelSpawnSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     private static final Logger logger = LoggerFactory.getLogger(LevelSpawnSystem.class);
 
     @In
@@ -53,77 +70,332 @@ public class LevelSpawnSystem extends BaseComponentSystem {
     private AssetManager assetManager;
     @In
     private WorldProvider worldProvider;
+    @In
+    private StructureSpawnScheduler structureSpawnScheduler;
+    @In
+    private StructureTemplateCache templateCache;
+    @In
+    private LostWorldQueryService worldQueryService;
+    @In
+    private LevelSiteRegistry levelSiteRegistry;
+
+    // players entering a biome discover the site of its level if it is within this distance
+    private static final int DISCOVERY_DISTANCE = 400;
+    // threads fetching the facets of the regions entered by players
+    private static final int FACET_FETCH_THREADS = 2;
+    // seconds between two projections of the player positions
+    private static final float LOOK_AHEAD_INTERVAL = 1f;
+    // how many seconds of movement the player positions are projected ahead
+    private static final float LOOK_AHEAD_TIME = 10f;
+    // the farthest a player position is projected ahead, in blocks
+    private static final float MAX_LOOK_AHEAD = 160f;
+    // seconds after which a predicted site that still isn't discovered is dropped
+    private static final float PREDICTION_TIMEOUT = 60f;
+    // predicted sites farther than this from every player are dropped
+    private static final int PREDICTION_RANGE = DISCOVERY_DISTANCE + (int) MAX_LOOK_AHEAD;
+    // the most predicted sites staged at once
+    private static final int MAX_PREDICTED_SITES = 32;
+
+    private ExecutorService facetFetcher;
+    private final Queue<Runnable> foundSites = new ConcurrentLinkedQueue<>();
+    // discovered sites whose entities are spawned once all of their chunks are loaded, and predicted sites
+    private final Map<Vector3i, StagedSite> pendingSites = new LinkedHashMap<>();
+    private int predictedSites;
+    // seconds since the system was initialised, the clock of the predictions
+    private float time;
+    // the position of each player at the last projection
+    private final Map<EntityRef, Vector3f> lastPositions = new HashMap<>();
+    // the region each player was last projected into, written by the workers
+    private final Map<EntityRef, GraphRegion> predictedRegions = new ConcurrentHashMap<>();
+    private float lookAheadTimer;
+
+    @Override
+    public void initialise() {
+        facetFetcher = Executors.newFixedThreadPool(FACET_FETCH_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("Lost-level-facets-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void shutdown() {
+        facetFetcher.shutdownNow();
+        lastPositions.clear();
+        predictedRegions.clear();
+    }
+
+    @Override
+    public void update(float delta) {
+        long start = LostMetrics.start();
+        // level sites are handled on the game thread once their facets have been fetched
+        Runnable foundSite;
+        while ((foundSite = foundSites.poll()) != null) {
+            foundSite.run();
+        }
+        time += delta;
+        lookAheadTimer += delta;
+        if (lookAheadTimer >= LOOK_AHEAD_INTERVAL) {
+            lookAhead(lookAheadTimer);
+            lookAheadTimer = 0;
+        }
+        Iterator<Map.Entry<Vector3i, StagedSite>> pending = pendingSites.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<Vector3i, StagedSite> site = pending.next();
+            if (site.getValue().predicted) {
+                // not discovered yet, the prediction may be wrong
+                continue;
+            }
+            LostLevel level = site.getValue().level;
+            BlockRegion bounds = getBounds(level).translate(site.getKey());
+            if (worldProvider.isRegionRelevant(bounds)) {
+                structureSpawnScheduler.spawnLevelEntities(level.getPrefab(), site.getKey());
+                levelSiteRegistry.addSite(level, site.getKey());
+                removeStaged(pending, site.getValue());
+            }
+        }
+        LostMetrics.LEVEL_SPAWN_TICK.stop(start);
+    }
 
-    // to prevent overlapping with hut
-    private static final int MINIMUM_DISTANCE_FROM_HUT = 30;
+    /**
+     * Converts the progress of players saved by earlier versions when their entity is loaded.
+     */
+    @ReceiveEvent
+    public void onProgressLoaded(OnActivatedComponent event, EntityRef player,
+                                 ProgressTrackingComponent progressTrackingComponent) {
+        if (progressTrackingComponent.migrateLegacyFields()) {
+            player.saveComponent(progressTrackingComponent);
+        }
+    }
 
     @ReceiveEvent
     public void onBiomeChange(OnBiomeChangedEvent event, EntityRef player,
                               ProgressTrackingComponent progressTrackingComponent) {
+        long start = LostMetrics.start();
+        try {
+            requestLevelSite(event, player, progressTrackingComponent);
+        } finally {
+            LostMetrics.BIOME_CHANGE.stop(start);
+        }
+    }
+
+    private void requestLevelSite(OnBiomeChangedEvent event, EntityRef player,
+                                  ProgressTrackingComponent progressTrackingComponent) {
+        LostLevel level = LostLevel.forBiome(event.getNewBiome());
+        if (level == null || progressTrackingComponent.isLevelDiscovered(level)
+                || level != LostLevel.WELL && !progressTrackingComponent.isWellFound()) {
+            // no level left for this biome, the facets aren't needed
+            return;
+        }
         LocationComponent loc = player.getComponent(LocationComponent.class);
         Vector3f playerLocation = loc.getWorldPosition(new Vector3f());
-        playerLocation = playerLocation.add(loc.getWorldDirection(new Vector3f()).mul(3));
-        // nearby area radius for which facets are fetched
-        int searchRadius = 400;
-
-        // create Region to be searched
-        Vector3i extent = new Vector3i(searchRadius, 1, searchRadius);
-        Vector3i desiredPos = new Vector3i(new Vector3f(playerLocation.x(), 1, playerLocation.z()), RoundingMode.FLOOR);
-        BlockRegion searchRegion = new BlockRegion(desiredPos).expand(extent);
-
-        // obtain surface height facet for the search region
-        org.terasology.engine.world.generation.Region worldRegion = LostWorldGenerator.world.getWorldData(searchRegion);
-        SurfacesFacet surfacesFacet = worldRegion.getFacet(SurfacesFacet.class);
-        ElevationFacet elevationFacet = worldRegion.getFacet(ElevationFacet.class);
-
-        // fetch the current voronoi region
-        GraphRegion region = worldRegion.getFacet(GraphFacet.class).getWorldTriangle(Math.round(playerLocation.x),
-                Math.round(playerLocation.z)).getRegion();
-        Vector2fc center = region.getCenter();
-
-        float distanceFromHut = center.distance(progressTrackingComponent.hutPosition.x,
-                progressTrackingComponent.hutPosition.z);
-        if (distanceFromHut < MINIMUM_DISTANCE_FROM_HUT && !event.getNewBiome().getDisplayName().contains("forest")) {
+        int playerX = Math.round(playerLocation.x);
+        int playerZ = Math.round(playerLocation.z);
+        if (levelSiteRegistry.findSite(level, playerX, playerZ, DISCOVERY_DISTANCE) != null) {
+            // another player discovered this level close by already
+            discover(player, progressTrackingComponent, level);
             return;
         }
-        String levelURI = progressTrackingComponent.getLevelPrefab(event.getNewBiome().getDisplayName());
-        if (levelURI != null && levelURI.contains("well")) {
-            progressTrackingComponent.foundWell = true;
+        Vector3i stagedSite = findPendingSite(level, playerX, playerZ);
+        if (stagedSite != null) {
+            // the site was found ahead of time
+            onLevelSiteFound(player, level, stagedSite);
+            return;
         }
-        if (levelURI != null && progressTrackingComponent.isWellFound()) {
-            // round center coordinates to Integers
-            int x = Math.round(center.x());
-            int y = Math.round(center.y());
-            int height = Math.round(surfacesFacet.getPrimarySurface(elevationFacet, x, y).orElse(elevationFacet.getWorld(x, y)));
 
-            Vector3i spawnPosition = new Vector3i(x, height, y);
-            spawnLevel(levelURI, spawnPosition, assetManager, entityManager);
+        facetFetcher.execute(() -> {
+            long lookupStart = LostMetrics.start();
+            Vector3i site = worldQueryService.getLevelSite(level, playerX, playerZ);
+            LostMetrics.LEVEL_SITE_LOOKUP.stop(lookupStart);
+            if (site != null && site.distanceSquared(playerX, site.y, playerZ)
+                    <= (long) DISCOVERY_DISTANCE * DISCOVERY_DISTANCE) {
+                foundSites.add(() -> onLevelSiteFound(player, level, site));
+            }
+        });
+    }
+
+    private void onLevelSiteFound(EntityRef player, LostLevel level, Vector3i site) {
+        ProgressTrackingComponent progressTrackingComponent = player.getComponent(ProgressTrackingComponent.class);
+        if (progressTrackingComponent == null || progressTrackingComponent.isLevelDiscovered(level)) {
+            return;
+        }
+        if (levelSiteRegistry.findSite(level, site.x, site.z, 0) == null
+                && !player.hasComponent(SimulatedPlayerComponent.class)) {
+            // the first discovery of the site, its entities are spawned once it is loaded
+            StagedSite staged = pendingSites.get(site);
+            if (staged == null) {
+                pendingSites.put(site, new StagedSite(level, false, time));
+            } else if (staged.predicted) {
+                // discovered now, so it is kept until it is loaded
+                staged.predicted = false;
+                predictedSites--;
+            }
+        }
+        discover(player, progressTrackingComponent, level);
+    }
 
-            // prevent level just spawned from being spawned again
-            Set<String> keySet = progressTrackingComponent.biomeToPrefab.keySet();
-            for (String key : keySet) {
-                if (progressTrackingComponent.getLevelPrefab(key) != null && progressTrackingComponent.getLevelPrefab(key).equals(levelURI)) {
-                    progressTrackingComponent.biomeToPrefab.put(key, null);
+    /**
+     * Projects the position of every player along their movement since the last projection and prepares the site of
+     * the region they are heading into.
+     *
+     * @param elapsed the seconds since the last projection
+     */
+    private void lookAhead(float elapsed) {
+        lastPositions.keySet().removeIf(player -> !player.exists());
+        predictedRegions.keySet().removeIf(player -> !player.exists());
+        expirePredictions();
+        for (EntityRef player : entityManager.getEntitiesWith(ProgressTrackingComponent.class,
+                LocationComponent.class)) {
+            Vector3f position = player.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
+            Vector3f last = lastPositions.put(player, position);
+            if (last == null) {
+                continue;
+            }
+            Vector3f heading = new Vector3f(position).sub(last);
+            heading.y = 0;
+            heading.mul(LOOK_AHEAD_TIME / elapsed);
+            if (heading.lengthSquared() < 1) {
+                // standing still
+                continue;
+            }
+            if (heading.length() > MAX_LOOK_AHEAD) {
+                heading.normalize(MAX_LOOK_AHEAD);
+            }
+            long wanted = getWantedLevels(player.getComponent(ProgressTrackingComponent.class));
+            if (wanted != 0) {
+                predictLevelSite(player, wanted, Math.round(position.x), Math.round(position.z),
+                        Math.round(position.x + heading.x), Math.round(position.z + heading.z),
+                        !player.hasComponent(SimulatedPlayerComponent.class));
+            }
+        }
+    }
+
+    /**
+     * @param stage whether a predicted site is staged, false for the players of the load simulation
+     */
+    private void predictLevelSite(EntityRef player, long wanted, int playerX, int playerZ, int aheadX, int aheadZ,
+                                  boolean stage) {
+        facetFetcher.execute(() -> {
+            GraphRegion region = worldQueryService.getRegion(aheadX, aheadZ);
+            if (region == worldQueryService.getRegion(playerX, playerZ)
+                    || predictedRegions.put(player, region) == region) {
+                // the player stays in the current region, or the next one was prepared already
+                return;
+            }
+            LostLevel level = LostLevel.forBiome(worldQueryService.getBiome(aheadX, aheadZ));
+            if (level == null || (wanted & level.getMask()) == 0) {
+                return;
+            }
+            long lookupStart = LostMetrics.start();
+            Vector3i site = worldQueryService.getLevelSite(level, aheadX, aheadZ);
+            LostMetrics.LEVEL_SITE_LOOKUP.stop(lookupStart);
+            if (site != null && site.distanceSquared(aheadX, site.y, aheadZ)
+                    <= (long) DISCOVERY_DISTANCE * DISCOVERY_DISTANCE) {
+                LostMetrics.LEVEL_SITES_PREDICTED.increment();
+                if (stage) {
+                    foundSites.add(() -> onLevelSitePredicted(level, site));
                 }
             }
+        });
+    }
+
+    private void onLevelSitePredicted(LostLevel level, Vector3i site) {
+        if (predictedSites < MAX_PREDICTED_SITES && !pendingSites.containsKey(site)
+                && levelSiteRegistry.findSite(level, site.x, site.z, 0) == null) {
+            pendingSites.put(site, new StagedSite(level, true, time));
+            predictedSites++;
         }
-        player.saveComponent(progressTrackingComponent);
     }
 
     /**
-     * Spawns a Structure Template from the specified level urn in the specified position
+     * Drops the predicted sites which weren't loaded in time or which no player is heading to anymore.
      */
-    public static void spawnLevel(String levelURI, Vector3i spawnPosition, AssetManager assetManager,
-                                  EntityManager entityManager) {
-        Prefab prefab = assetManager.getAsset(levelURI, Prefab.class).orElse(null);
-        if (prefab == null) {
-            logger.error("Level prefab for the specified URI not found. Give URI :" + levelURI);
+    private void expirePredictions() {
+        if (predictedSites == 0) {
             return;
         }
-        EntityBuilder entityBuilder = entityManager.newBuilder(prefab);
-        EntityRef item = entityBuilder.build();
-        BlockRegionTransform blockRegionTransform = BlockRegionTransform.createRotationThenMovement(Side.FRONT,
-                Side.FRONT, spawnPosition);
-        item.send(new SpawnStructureEvent(blockRegionTransform));
+        Iterator<Map.Entry<Vector3i, StagedSite>> pending = pendingSites.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<Vector3i, StagedSite> site = pending.next();
+            StagedSite staged = site.getValue();
+            if (staged.predicted && (time - staged.stagedAt > PREDICTION_TIMEOUT || !isPlayerNear(site.getKey()))) {
+                removeStaged(pending, staged);
+            }
+        }
+    }
+
+    private boolean isPlayerNear(Vector3i site) {
+        for (Vector3f position : lastPositions.values()) {
+            float dx = position.x - site.x;
+            float dz = position.z - site.z;
+            if (dx * dx + dz * dz <= (float) PREDICTION_RANGE * PREDICTION_RANGE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeStaged(Iterator<Map.Entry<Vector3i, StagedSite>> pending, StagedSite staged) {
+        pending.remove();
+        if (staged.predicted) {
+            predictedSites--;
+        }
+    }
+
+    /**
+     * @return the bits of the levels the player could discover next, see {@link LostLevel#getMask()}
+     */
+    private static long getWantedLevels(ProgressTrackingComponent progressTrackingComponent) {
+        long wanted = 0;
+        for (LostLevel level : LostLevel.values()) {
+            if (!progressTrackingComponent.isLevelDiscovered(level)
+                    && (level == LostLevel.WELL || progressTrackingComponent.isWellFound())) {
+                wanted |= level.getMask();
+            }
+        }
+        return wanted;
+    }
+
+    /**
+     * @return a site of the given level staged within the discovery distance, null if there is none
+     */
+    private Vector3i findPendingSite(LostLevel level, int x, int z) {
+        for (Map.Entry<Vector3i, StagedSite> site : pendingSites.entrySet()) {
+            if (site.getValue().level == level && site.getKey().distanceSquared(x, site.getKey().y, z)
+                    <= (long) DISCOVERY_DISTANCE * DISCOVERY_DISTANCE) {
+                return site.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks the level as discovered by the player, which prevents it from being looked up for the player again.
+     */
+    private void discover(EntityRef player, ProgressTrackingComponent progressTrackingComponent, LostLevel level) {
+        progressTrackingComponent.setLevelDiscovered(level);
+        if (level == LostLevel.WELL) {
+            progressTrackingComponent.setLevelFound(LostLevel.WELL);
+        }
+        player.saveComponent(progressTrackingComponent);
+    }
+
+    private BlockRegion getBounds(LostLevel level) {
+        StructureTemplateCache.CachedTemplate template = templateCache.get(level.getPrefab());
+        return template != null ? template.getBlocks().getBounds() : new BlockRegion(0, 0, 0);
+    }
+
+    /**
+     * A site whose entities are spawned once all of its chunks are loaded.
+     */
+    private static final class StagedSite {
+        private final LostLevel level;
+        // the time the site was staged at
+        private final float stagedAt;
+        // whether the site was only predicted, no player has discovered it yet and nothing of it is spawned
+        private boolean predicted;
+
+        StagedSite(LostLevel level, boolean predicted, float stagedAt) {
+            this.level = level;
+            this.stagedAt = stagedAt;
+            this.predicted = predicted;
+        }
     }
 }
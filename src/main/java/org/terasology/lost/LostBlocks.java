@@ -0,0 +1,61 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.family.BlockFamily;
+
+/**
+ * The blocks used by the Lost systems, resolved once when the system is initialised. Blocks and families are unique
+ * within the {@link BlockManager}, so they can be compared by identity.
+ */
+@RegisterSystem
+@Share(LostBlocks.class)
+public class LostBlocks extends BaseComponentSystem {
+    public static final String ARKENSTONE = "Lost:Arkenstone";
+    public static final String SHATTERED_PLASMA = "Lost:ShatteredPlasma";
+    public static final String FACADE_OF_TRUTH = "Lost:FacadeOfTruth";
+    public static final String OBSIDIAN_TORCH = "Lost:ObsidianTorch";
+
+    @In
+    private BlockManager blockManager;
+
+    private Block arkenstone;
+    private Block shatteredPlasma;
+    private Block facadeOfTruth;
+    private BlockFamily obsidianTorch;
+
+    @Override
+    public void initialise() {
+        arkenstone = blockManager.getBlock(ARKENSTONE);
+        shatteredPlasma = blockManager.getBlock(SHATTERED_PLASMA);
+        facadeOfTruth = blockManager.getBlock(FACADE_OF_TRUTH);
+        // placed on the side or top of other blocks, so there are several blocks of the family
+        obsidianTorch = blockManager.getBlockFamily(OBSIDIAN_TORCH);
+    }
+
+    public Block getArkenstone() {
+        return arkenstone;
+    }
+
+    public Block getShatteredPlasma() {
+        return shatteredPlasma;
+    }
+
+    public Block getFacadeOfTruth() {
+        return facadeOfTruth;
+    }
+
+    /**
+     * @return whether the given family is the obsidian torch, which lights up portals
+     */
+    public boolean isObsidianTorch(BlockFamily family) {
+        return family != null && family == obsidianTorch;
+    }
+}
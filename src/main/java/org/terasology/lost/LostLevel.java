@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.terasology.biomesAPI.Biome;
+import org.terasology.polyworld.biome.WhittakerBiome;
+
+/**
+ * The levels of Lost together with the biomes they are spawned in. The position of a level in this enum is its index,
+ * which is used to track the progress of players in {@link ProgressTrackingComponent}.
+ */
+public enum LostLevel {
+    WELL("Lost:well", WhittakerBiome.BEACH, WhittakerBiome.COAST, WhittakerBiome.LAKESHORE),
+    TEMPLE("Lost:templePlasmaOfFire", WhittakerBiome.TROPICAL_SEASONAL_FOREST, WhittakerBiome.TROPICAL_RAIN_FOREST,
+            WhittakerBiome.TEMPERATE_DECIDUOUS_FOREST, WhittakerBiome.TEMPERATE_RAIN_FOREST),
+    STONEHENGE("Lost:stonehengeWipedOutKey", WhittakerBiome.MARSH, WhittakerBiome.SHRUBLAND, WhittakerBiome.GRASSLAND),
+    PYRAMID("Lost:pyramidBladesOfTruth", WhittakerBiome.BARE, WhittakerBiome.SCORCHED, WhittakerBiome.TEMPERATE_DESERT,
+            WhittakerBiome.SUBTROPICAL_DESERT);
+
+    // levels indexed by the ordinal of the biome they are spawned in
+    private static final LostLevel[] BIOME_LEVELS = new LostLevel[WhittakerBiome.values().length];
+
+    static {
+        for (LostLevel level : values()) {
+            for (WhittakerBiome biome : level.biomes) {
+                BIOME_LEVELS[biome.ordinal()] = level;
+            }
+        }
+    }
+
+    private final String prefab;
+    private final WhittakerBiome[] biomes;
+
+    LostLevel(String prefab, WhittakerBiome... biomes) {
+        this.prefab = prefab;
+        this.biomes = biomes;
+    }
+
+    /**
+     * @return the level spawned in the given biome, null if there is none
+     */
+    public static LostLevel forBiome(Biome biome) {
+        if (biome instanceof WhittakerBiome) {
+            return BIOME_LEVELS[((WhittakerBiome) biome).ordinal()];
+        }
+        return null;
+    }
+
+    /**
+     * @return the URI of the structure template prefab of this level
+     */
+    public String getPrefab() {
+        return prefab;
+    }
+
+    /**
+     * @return the bit of this level in the progress bitsets of {@link ProgressTrackingComponent}
+     */
+    public long getMask() {
+        return 1L << ordinal();
+    }
+}
@@ -0,0 +1,71 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.WorldComponent;
+import org.terasology.engine.world.generator.WorldGenerator;
+import org.terasology.lost.generator.LostWorldCache;
+import org.terasology.lost.generator.LostWorldCacheComponent;
+import org.terasology.lost.generator.LostWorldGenerator;
+
+/**
+ * Loads the {@link LostWorldCache} from the {@link LostWorldCacheComponent} of the world entity when the game starts,
+ * and stores it there again whenever the game is saved. The entries are discarded if the world seed or the
+ * {@link LostWorldGenerator#GENERATOR_VERSION} changed, and are built up again as players spawn.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(LostWorldCacheSystem.class)
+public class LostWorldCacheSystem extends BaseComponentSystem {
+    @In
+    private EntityManager entityManager;
+    @In
+    private WorldGenerator worldGenerator;
+
+    private EntityRef worldEntity = EntityRef.NULL;
+    private LostWorldCache cache = new LostWorldCache();
+
+    @Override
+    public void postBegin() {
+        for (EntityRef world : entityManager.getEntitiesWith(WorldComponent.class)) {
+            worldEntity = world;
+            break;
+        }
+        cache = LostWorldCache.fromComponent(worldEntity.getComponent(LostWorldCacheComponent.class),
+                worldGenerator.getWorldSeed(), LostWorldGenerator.GENERATOR_VERSION);
+        if (worldGenerator instanceof LostWorldGenerator) {
+            ((LostWorldGenerator) worldGenerator).setWorldCache(cache);
+        }
+    }
+
+    @Override
+    public void preSave() {
+        store();
+    }
+
+    @Override
+    public void shutdown() {
+        store();
+        if (worldGenerator instanceof LostWorldGenerator) {
+            ((LostWorldGenerator) worldGenerator).setWorldCache(null);
+        }
+    }
+
+    public LostWorldCache getCache() {
+        return cache;
+    }
+
+    private void store() {
+        if (cache.isDirty() && worldEntity.exists()) {
+            worldEntity.addOrSaveComponent(cache.toComponent(worldGenerator.getWorldSeed(),
+                    LostWorldGenerator.GENERATOR_VERSION));
+        }
+    }
+}
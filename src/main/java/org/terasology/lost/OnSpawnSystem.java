@@ -15,34 +15,50 @@
  */
 package org.terasology.lost;
 
-import org.joml.RoundingMode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.logic.players.event.OnPlayerSpawnedEvent;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BlockRegion;
-import org.terasology.engine.world.generation.facets.ElevationFacet;
-import org.terasology.engine.world.generation.facets.SurfacesFacet;
 import org.terasology.gestalt.assets.management.AssetManager;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
-import org.terasology.lost.generator.LostWorldGenerator;
+import org.terasology.lost.generator.LevelSiteFacet;
+import org.terasology.lost.generator.LostWorldCache;
+import org.terasology.lost.generator.LostWorldQueryService;
+import org.terasology.lost.generator.SummedAreaHeights;
+import org.terasology.lost.metrics.LostMetrics;
+import org.terasology.lost.metrics.SimulatedPlayerComponent;
 import org.terasology.module.inventory.components.InventoryComponent;
 import org.terasology.module.inventory.systems.InventoryManager;
 
-import static org.terasology.lost.LevelSpawnSystem.spawnLevel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Contains actions to be taken when the player spawns in the Lost world for the first time
+ * Contains actions to be taken when the player spawns in the Lost world for the first time. Unless the hut position
+ * around the spawn point is cached, it is searched for on a worker, as that may generate facets, and the hut is
+ * spawned on the game thread once it is found.
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class OnSpawnSystem extends BaseComponentSystem {
+public class OnSpawnSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+    private static final Logger logger = LoggerFactory.getLogger(OnSpawnSystem.class);
+
     @In
     private EntityManager entityManager;
     @In
@@ -51,45 +67,183 @@ public class OnSpawnSystem extends BaseComponentSystem {
     private AssetManager assetManager;
     @In
     private WorldProvider worldProvider;
+    @In
+    private StructureSpawnScheduler structureSpawnScheduler;
+    @In
+    private LostWorldQueryService worldQueryService;
+    @In
+    private LostWorldCacheSystem worldCacheSystem;
+    @In
+    private StructureTemplateCache templateCache;
 
     private static final int HUT_OFFSET_FROM_SPAWN = 15;
+    // the hut is placed within this distance of the player along both axes
+    private static final int HUT_SEARCH_RADIUS = 25;
+    // minimum number of blocks between the player and the hut
+    private static final int HUT_CLEARANCE = 3;
+    // minimum number of blocks between the hut and the structure of a level
+    private static final int LEVEL_SITE_CLEARANCE = 8;
+
+    // searches the hut positions, which may have to generate facets
+    private ExecutorService hutSearch;
+    // huts whose position is found, spawned on the game thread
+    private final Queue<Runnable> foundHuts = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void initialise() {
+        hutSearch = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Lost-hut-search-%d").setDaemon(true).build());
+    }
 
     @ReceiveEvent
     public void onPlayerSpawn(OnPlayerSpawnedEvent event, EntityRef player, InventoryComponent inventory) {
-        inventoryManager.giveItem(player, null, entityManager.create("Lost:antrumSabre"));
+        long start = LostMetrics.start();
+        // players of the load simulation only exercise the lookups, nothing of theirs may outlive the simulation
+        boolean simulated = player.hasComponent(SimulatedPlayerComponent.class);
+        if (!simulated) {
+            inventoryManager.giveItem(player, null, entityManager.create("Lost:antrumSabre"));
+        }
+        // the levels and the biomes they spawn in are defined by LostLevel
         ProgressTrackingComponent progressTrackingComponent = new ProgressTrackingComponent();
-        // set level prefabs according to the biome they are supposed to spawn in
-        progressTrackingComponent.addLevel("Lost:well", "Beach", "Coast", "Lakeshore");
-        progressTrackingComponent.addLevel("Lost:templePlasmaOfFire", "Tropical seasonal forest", "Tropical rain " +
-                "forest", "Temperate deciduous forest", "Temperate rain forest");
-        progressTrackingComponent.addLevel("Lost:stonehengeWipedOutKey", "Marsh", "Shrubland", "Grassland");
-        progressTrackingComponent.addLevel("Lost:pyramidBladesOfTruth", "Bare", "Scorched", "Temperate " +
-                "desert", "Subtropical desert");
         player.addComponent(progressTrackingComponent);
 
         LocationComponent loc = player.getComponent(LocationComponent.class);
         Vector3f playerLocation = loc.getWorldPosition(new Vector3f());
-        // radius such that hut is in the search area
-        int searchRadius = 25;
 
-        // create Region to be searched
-        Vector3i extent = new Vector3i(searchRadius, 1, searchRadius);
-        Vector3i desiredPos = new Vector3i(new Vector3f(playerLocation.x(), 1, playerLocation.z()), RoundingMode.FLOOR);
-        BlockRegion searchRegion = new BlockRegion(desiredPos).expand(extent);
+        // spawn the hut a little far from the player
+        int playerX = Math.round(playerLocation.x());
+        int playerZ = Math.round(playerLocation.z());
+        LostWorldCache cache = worldCacheSystem.getCache();
+        Vector3ic cachedPosition = cache.getHutPosition(playerX, playerZ);
+        if (cachedPosition != null) {
+            spawnHut(player, new Vector3i(cachedPosition), simulated);
+        } else {
+            hutSearch.execute(() -> {
+                try {
+                    long searchStart = LostMetrics.start();
+                    Vector3i spawnPosition = findHutPosition(playerX, playerZ);
+                    LostMetrics.HUT_SEARCH.stop(searchStart);
+                    foundHuts.add(() -> {
+                        if (!simulated) {
+                            cache.putHutPosition(playerX, playerZ, spawnPosition);
+                        }
+                        spawnHut(player, spawnPosition, simulated);
+                    });
+                } catch (RuntimeException e) {
+                    logger.error("Could not find a hut position around {}, {}", playerX, playerZ, e);
+                }
+            });
+        }
+        LostMetrics.PLAYER_SPAWN.stop(start);
+    }
+
+    private void spawnHut(EntityRef player, Vector3i spawnPosition, boolean simulated) {
+        if (!simulated) {
+            structureSpawnScheduler.spawnLevel(StructureTemplateCache.HUT, spawnPosition);
+        }
+        ProgressTrackingComponent progressTrackingComponent = player.getComponent(ProgressTrackingComponent.class);
+        if (progressTrackingComponent != null) {
+            progressTrackingComponent.setHutPosition(spawnPosition.x, spawnPosition.z);
+            player.saveComponent(progressTrackingComponent);
+        }
+    }
 
-        // fetch surface height facet
-        org.terasology.engine.world.generation.Region worldRegion = LostWorldGenerator.world.getWorldData(searchRegion);
-        SurfacesFacet surfacesFacet = worldRegion.getFacet(SurfacesFacet.class);
-        ElevationFacet elevationFacet = worldRegion.getFacet(ElevationFacet.class);
+    /**
+     * Spawns the huts whose position was found since the last update.
+     */
+    @Override
+    public void update(float delta) {
+        Runnable foundHut;
+        while ((foundHut = foundHuts.poll()) != null) {
+            foundHut.run();
+        }
+    }
 
-        // spawn the hut a little far from the player
-        int x = (int) Math.round(playerLocation.x()) - HUT_OFFSET_FROM_SPAWN;
-        int y = (int) Math.round(playerLocation.z()) - HUT_OFFSET_FROM_SPAWN;
-        int height = Math.round(surfacesFacet.getPrimarySurface(elevationFacet, x, y).orElse(elevationFacet.getWorld(x, y)));
-        Vector3i spawnPosition = new Vector3i(x, height, y);
-        spawnLevel("Lost:hut", spawnPosition, assetManager, entityManager);
-        spawnPosition.y = 0;
-        progressTrackingComponent.hutPosition.set(spawnPosition);
+    @Override
+    public void shutdown() {
+        hutSearch.shutdownNow();
+        foundHuts.clear();
+    }
+
+    /**
+     * Finds the flattest spot for the hut around the player, i.e. the one where the surface heights under the footprint
+     * of the hut vary the least. Of equally flat spots the one closest to the default offset from the player is chosen.
+     * Spots within {@link #LEVEL_SITE_CLEARANCE} of the structure of a level are skipped. Called on the worker.
+     */
+    private Vector3i findHutPosition(int playerX, int playerZ) {
+        int defaultX = playerX - HUT_OFFSET_FROM_SPAWN;
+        int defaultZ = playerZ - HUT_OFFSET_FROM_SPAWN;
+        StructureTemplateCache.CachedTemplate hut = templateCache.get(StructureTemplateCache.HUT);
+        if (hut == null) {
+            return new Vector3i(defaultX, worldQueryService.getSurfaceHeightsOfArea(defaultX, defaultZ, 1, 1)[0],
+                    defaultZ);
+        }
+        BlockRegion footprint = hut.getBlocks().getBounds();
+        int minX = playerX - HUT_SEARCH_RADIUS;
+        int minZ = playerZ - HUT_SEARCH_RADIUS;
+        int size = 2 * HUT_SEARCH_RADIUS + 1;
+        // the level sites are looked up first, so that the heights are read from the tiles this has cached
+        List<BlockRegion> levelSites = getLevelSiteBounds(minX, minZ, minX + size - 1, minZ + size - 1);
+        int[] surfaceHeights = worldQueryService.getSurfaceHeightsOfArea(minX, minZ, size, size);
+        SummedAreaHeights heights = new SummedAreaHeights(surfaceHeights, size, size);
+
+        Vector3i best = null;
+        double bestVariance = Double.MAX_VALUE;
+        long bestDistance = Long.MAX_VALUE;
+        // origins whose footprint lies within the search window
+        for (int z = minZ - footprint.minZ(); z + footprint.maxZ() < minZ + size; z++) {
+            for (int x = minX - footprint.minX(); x + footprint.maxX() < minX + size; x++) {
+                if (playerX >= x + footprint.minX() - HUT_CLEARANCE && playerX <= x + footprint.maxX() + HUT_CLEARANCE
+                        && playerZ >= z + footprint.minZ() - HUT_CLEARANCE
+                        && playerZ <= z + footprint.maxZ() + HUT_CLEARANCE) {
+                    // too close to the player, who would end up inside the hut
+                    continue;
+                }
+                if (overlapsAny(levelSites, x + footprint.minX(), z + footprint.minZ(), x + footprint.maxX(),
+                        z + footprint.maxZ())) {
+                    continue;
+                }
+                int footprintX = x + footprint.minX() - minX;
+                int footprintZ = z + footprint.minZ() - minZ;
+                double variance = heights.getVariance(footprintX, footprintZ, footprint.getSizeX(),
+                        footprint.getSizeZ());
+                long distance = (long) (x - defaultX) * (x - defaultX) + (long) (z - defaultZ) * (z - defaultZ);
+                if (variance < bestVariance || variance == bestVariance && distance < bestDistance) {
+                    int height = (int) Math.round(heights.getMean(footprintX, footprintZ, footprint.getSizeX(),
+                            footprint.getSizeZ()));
+                    best = new Vector3i(x, height, z);
+                    bestVariance = variance;
+                    bestDistance = distance;
+                }
+            }
+        }
+        // the default offset lies within the search window
+        return best != null ? best
+                : new Vector3i(defaultX, surfaceHeights[(defaultZ - minZ) * size + defaultX - minX], defaultZ);
+    }
+
+    /**
+     * @return the horizontal bounds of the level structures reaching into the given columns, grown by the clearance
+     */
+    private List<BlockRegion> getLevelSiteBounds(int minX, int minZ, int maxX, int maxZ) {
+        List<BlockRegion> bounds = new ArrayList<>();
+        for (LevelSiteFacet.Site site : worldQueryService.getLevelSites(minX, minZ, maxX, maxZ)) {
+            StructureTemplateCache.CachedTemplate template = templateCache.get(site.getLevel().getPrefab());
+            BlockRegion structure = template != null ? template.getBlocks().getBounds() : new BlockRegion(0, 0, 0);
+            structure.translate(site.getPosition());
+            bounds.add(new BlockRegion(structure.minX() - LEVEL_SITE_CLEARANCE, 0,
+                    structure.minZ() - LEVEL_SITE_CLEARANCE, structure.maxX() + LEVEL_SITE_CLEARANCE, 0,
+                    structure.maxZ() + LEVEL_SITE_CLEARANCE));
+        }
+        return bounds;
+    }
 
+    private static boolean overlapsAny(List<BlockRegion> regions, int minX, int minZ, int maxX, int maxZ) {
+        for (BlockRegion region : regions) {
+            if (minX <= region.maxX() && maxX >= region.minX() && minZ <= region.maxZ() && maxZ >= region.minZ()) {
+                return true;
+            }
+        }
+        return false;
     }
 }
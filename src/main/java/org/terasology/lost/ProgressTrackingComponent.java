@@ -3,41 +3,106 @@
 
 package org.terasology.lost;
 
-import com.google.common.collect.Maps;
 import org.joml.Vector3i;
 import org.terasology.gestalt.entitysystem.component.Component;
+import org.terasology.polyworld.biome.WhittakerBiome;
 
 import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Component to track a players progress during Lost
+ * Component to track a players progress during Lost. The progress is kept in a few primitive fields, so that the
+ * records of many players stay small in the save game.
  */
 public class ProgressTrackingComponent implements Component<ProgressTrackingComponent> {
-    // Biomes mapped to the corresponding level URIs
-    public HashMap<String, String> biomeToPrefab = new HashMap<String, String>();
-    // To track whether the well has been discovered
+    // Bits of the levels, see LostLevel#getMask, which the player has discovered, i.e. spawned or found nearby
+    public long discoveredLevels;
+    // Bits of the levels which have been found by the player
+    public long foundLevels;
+    // Column of the hut once it is spawned, x in the upper and z in the lower 32 bits, see getHutPosition
+    public long hutColumn;
+
+    // Progress as stored by earlier versions, only read to convert old save games, see migrateLegacyFields
+    @Deprecated
+    public Map<String, String> biomeToPrefab;
+    @Deprecated
     public boolean foundWell;
-    // Stores the hut position once it is spawned to prevent overlapping with levels
-    public Vector3i hutPosition = new Vector3i();
+    @Deprecated
+    public Vector3i hutPosition;
+
+    public boolean isLevelDiscovered(LostLevel level) {
+        return (discoveredLevels & level.getMask()) != 0;
+    }
+
+    public void setLevelDiscovered(LostLevel level) {
+        discoveredLevels |= level.getMask();
+    }
+
+    public boolean isLevelFound(LostLevel level) {
+        return (foundLevels & level.getMask()) != 0;
+    }
 
-    public String getLevelPrefab(String biomeName) {
-        return biomeToPrefab.get(biomeName);
+    public void setLevelFound(LostLevel level) {
+        foundLevels |= level.getMask();
     }
 
     public boolean isWellFound() {
-        return foundWell;
+        return isLevelFound(LostLevel.WELL);
     }
 
-    public void addLevel(String prefabName, String... biomes) {
-        for (String biome : biomes) {
-            biomeToPrefab.put(biome, prefabName);
+    /**
+     * @return the position of the hut at y = 0, stored in the given vector
+     */
+    public Vector3i getHutPosition(Vector3i dest) {
+        return dest.set((int) (hutColumn >> 32), 0, (int) hutColumn);
+    }
+
+    public void setHutPosition(int x, int z) {
+        hutColumn = (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Converts the progress stored by earlier versions into the current fields and clears the old ones. Earlier
+     * versions mapped the display names of the biomes of every level to its prefab when the player spawned, and set the
+     * prefab to null once the level was spawned. A null value may not survive the serializer, so a level biome missing
+     * from a map which isn't empty counts as spawned as well.
+     *
+     * @return whether there was anything to convert
+     */
+    @SuppressWarnings("deprecation")
+    public boolean migrateLegacyFields() {
+        if (biomeToPrefab == null && !foundWell && hutPosition == null) {
+            return false;
+        }
+        if (biomeToPrefab != null && !biomeToPrefab.isEmpty()) {
+            for (WhittakerBiome biome : WhittakerBiome.values()) {
+                LostLevel level = LostLevel.forBiome(biome);
+                // absent and null both mean that the prefab was removed
+                if (level != null && biomeToPrefab.get(biome.getDisplayName()) == null) {
+                    setLevelDiscovered(level);
+                }
+            }
+        }
+        if (foundWell) {
+            setLevelFound(LostLevel.WELL);
+        }
+        if (hutPosition != null) {
+            setHutPosition(hutPosition.x, hutPosition.z);
         }
+        biomeToPrefab = null;
+        foundWell = false;
+        hutPosition = null;
+        return true;
     }
 
     @Override
+    @SuppressWarnings("deprecation")
     public void copyFrom(ProgressTrackingComponent other) {
-        this.biomeToPrefab = Maps.newHashMap(other.biomeToPrefab);
+        this.discoveredLevels = other.discoveredLevels;
+        this.foundLevels = other.foundLevels;
+        this.hutColumn = other.hutColumn;
+        this.biomeToPrefab = other.biomeToPrefab != null ? new HashMap<>(other.biomeToPrefab) : null;
         this.foundWell = other.foundWell;
-        this.hutPosition.set(other.hutPosition);
+        this.hutPosition = other.hutPosition != null ? new Vector3i(other.hutPosition) : null;
     }
 }
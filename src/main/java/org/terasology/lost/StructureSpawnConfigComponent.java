@@ -0,0 +1,35 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost;
+
+import org.terasology.engine.utilities.Assets;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Per-tick budget of the {@link StructureSpawnScheduler}, read from the {@code Lost:structureSpawnConfig} prefab.
+ * Servers can tune it by overriding the prefab.
+ */
+public class StructureSpawnConfigComponent implements Component<StructureSpawnConfigComponent> {
+    public static final String PREFAB = "Lost:structureSpawnConfig";
+
+    // the most blocks placed per tick, at least one batch is placed every tick
+    public int blocksPerTick = StructureSpawnScheduler.DEFAULT_BLOCKS_PER_TICK;
+    // milliseconds per tick after which no further blocks are placed
+    public float millisPerTick = StructureSpawnScheduler.DEFAULT_NANOS_PER_TICK / 1_000_000f;
+
+    /**
+     * @return the configuration of the prefab, or the defaults if there is none
+     */
+    public static StructureSpawnConfigComponent load() {
+        StructureSpawnConfigComponent config = Assets.getPrefab(PREFAB)
+                .map(prefab -> prefab.getComponent(StructureSpawnConfigComponent.class))
+                .orElse(null);
+        return config != null ? config : new StructureSpawnConfigComponent();
+    }
+
+    @Override
+    public void copyFrom(StructureSpawnConfigComponent other) {
+        this.blocksPerTick = other.blocksPerTick;
+        this.millisPerTick = other.millisPerTick;
+    }
+}
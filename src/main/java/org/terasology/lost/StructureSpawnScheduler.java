@@ -0,0 +1,182 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.entitySystem.entity.EntityBuilder;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.lost.generator.StructureTemplateBlocks;
+import org.terasology.lost.metrics.LostMetrics;
+import org.terasology.structureTemplates.components.SpawnBlockRegionsComponent;
+import org.terasology.structureTemplates.events.SpawnStructureEvent;
+import org.terasology.structureTemplates.util.BlockRegionTransform;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Spawns structure templates spread over several ticks. Spawns are queued and the blocks of their
+ * {@link SpawnBlockRegionsComponent}, as parsed by the {@link StructureTemplateCache}, are placed in batches limited by
+ * a per-tick block and time budget, read from the {@link StructureSpawnConfigComponent}. Once all blocks of a structure
+ * are placed, the remaining parts of the template (chests, traps, ...) are spawned through a regular
+ * {@link SpawnStructureEvent}.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(StructureSpawnScheduler.class)
+public class StructureSpawnScheduler extends BaseComponentSystem implements UpdateSubscriberSystem {
+    private static final Logger logger = LoggerFactory.getLogger(StructureSpawnScheduler.class);
+
+    public static final int DEFAULT_BLOCKS_PER_TICK = 4096;
+    public static final long DEFAULT_NANOS_PER_TICK = 2_000_000;
+    // number of blocks placed at once, the time budget is checked between batches
+    private static final int BATCH_SIZE = 256;
+
+    @In
+    private StructureTemplateCache templateCache;
+    @In
+    private EntityManager entityManager;
+    @In
+    private WorldProvider worldProvider;
+
+    private final Queue<PendingStructure> queue = new ArrayDeque<>();
+    private int blocksPerTick = DEFAULT_BLOCKS_PER_TICK;
+    private long nanosPerTick = DEFAULT_NANOS_PER_TICK;
+
+    @Override
+    public void initialise() {
+        StructureSpawnConfigComponent config = StructureSpawnConfigComponent.load();
+        setBlocksPerTick(config.blocksPerTick);
+        setNanosPerTick((long) (config.millisPerTick * 1_000_000));
+    }
+
+    /**
+     * Queues the Structure Template from the specified level urn to be spawned in the specified position
+     */
+    public void spawnLevel(String levelURI, Vector3i spawnPosition) {
+        queueStructure(levelURI, spawnPosition, true);
+    }
+
+    /**
+     * Queues everything but the blocks of the Structure Template from the specified level urn, for structures whose
+     * blocks have been generated with the world already.
+     */
+    public void spawnLevelEntities(String levelURI, Vector3i spawnPosition) {
+        queueStructure(levelURI, spawnPosition, false);
+    }
+
+    private void queueStructure(String levelURI, Vector3i spawnPosition, boolean placeBlocks) {
+        long start = LostMetrics.start();
+        StructureTemplateCache.CachedTemplate template = templateCache.get(levelURI);
+        if (template == null) {
+            logger.error("Level prefab for the specified URI not found. Give URI :" + levelURI);
+            return;
+        }
+        queue.add(new PendingStructure(template, new Vector3i(spawnPosition), placeBlocks));
+        LostMetrics.SPAWN_LEVEL.stop(start);
+    }
+
+    @Override
+    public void update(float delta) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        long start = LostMetrics.start();
+        long deadline = System.nanoTime() + nanosPerTick;
+        int blocksLeft = blocksPerTick;
+        while (!queue.isEmpty() && blocksLeft > 0 && System.nanoTime() < deadline) {
+            PendingStructure structure = queue.peek();
+            blocksLeft -= structure.placeBlocks(Math.min(blocksLeft, BATCH_SIZE));
+            if (structure.isPlaced()) {
+                queue.remove();
+                structure.finish();
+            }
+        }
+        LostMetrics.STRUCTURE_SPAWN_TICK.stop(start);
+    }
+
+    /**
+     * @return the number of structures which are queued or partially placed
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Sets the maximum number of blocks placed per tick. At least one batch of blocks is placed every tick.
+     */
+    public void setBlocksPerTick(int blocksPerTick) {
+        this.blocksPerTick = Math.max(1, blocksPerTick);
+    }
+
+    /**
+     * Sets the time per tick after which no further blocks are placed.
+     */
+    public void setNanosPerTick(long nanosPerTick) {
+        this.nanosPerTick = Math.max(0, nanosPerTick);
+    }
+
+    private final class PendingStructure {
+        private final StructureTemplateCache.CachedTemplate template;
+        private final Vector3i origin;
+        // index of the next block of the template to place
+        private int next;
+
+        PendingStructure(StructureTemplateCache.CachedTemplate template, Vector3i origin, boolean placeBlocks) {
+            this.template = template;
+            this.origin = origin;
+            this.next = placeBlocks ? 0 : template.getBlocks().size();
+        }
+
+        /**
+         * Places up to the given number of blocks, in the order of the template.
+         *
+         * @return the number of blocks placed
+         */
+        int placeBlocks(int maxBlocks) {
+            StructureTemplateBlocks blocks = template.getBlocks();
+            int end = Math.min(blocks.size(), next + maxBlocks);
+            Map<Vector3ic, Block> batch = new HashMap<>();
+            for (int i = next; i < end; i++) {
+                batch.put(new Vector3i(origin.x + blocks.getX(i), origin.y + blocks.getY(i),
+                        origin.z + blocks.getZ(i)), blocks.getBlock(i));
+            }
+            if (!batch.isEmpty()) {
+                worldProvider.setBlocks(batch);
+            }
+            int placed = end - next;
+            next = end;
+            LostMetrics.STRUCTURE_BLOCKS.add(placed);
+            return Math.max(1, placed);
+        }
+
+        boolean isPlaced() {
+            return next >= template.getBlocks().size();
+        }
+
+        /**
+         * Spawns everything but the block regions, which have been placed already.
+         */
+        void finish() {
+            EntityBuilder entityBuilder = entityManager.newBuilder(template.getPrefab());
+            entityBuilder.removeComponent(SpawnBlockRegionsComponent.class);
+            entityBuilder.build().send(new SpawnStructureEvent(BlockRegionTransform.createRotationThenMovement(
+                    Side.FRONT, Side.FRONT, origin)));
+            LostMetrics.STRUCTURES_SPAWNED.increment();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.gestalt.assets.management.AssetManager;
+import org.terasology.lost.generator.StructureTemplateBlocks;
+import org.terasology.structureTemplates.components.SpawnBlockRegionsComponent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the structure templates spawned by Lost resolved and parsed into {@link StructureTemplateBlocks}, so that
+ * spawning a structure needs neither an asset lookup nor parsing of the prefab. The templates of the hut and all levels
+ * are loaded when the system is initialised. A template is resolved again once its prefab has been reloaded, which is
+ * detected by the prefab holding another {@link SpawnBlockRegionsComponent} than the one parsed. The parsed blocks are
+ * shared with world generation through {@link StructureTemplateBlocks#of(Prefab)}.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(StructureTemplateCache.class)
+public class StructureTemplateCache extends BaseComponentSystem {
+    private static final Logger logger = LoggerFactory.getLogger(StructureTemplateCache.class);
+
+    public static final String HUT = "Lost:hut";
+
+    @In
+    private AssetManager assetManager;
+
+    private final Map<String, CachedTemplate> templates = new HashMap<>();
+    private int reloads;
+
+    @Override
+    public void initialise() {
+        load(HUT);
+        for (LostLevel level : LostLevel.values()) {
+            load(level.getPrefab());
+        }
+    }
+
+    /**
+     * Returns the parsed template of the given prefab, loading it if it isn't cached yet.
+     *
+     * @return the template, null if there is no such prefab
+     */
+    public CachedTemplate get(String templateURI) {
+        CachedTemplate template = templates.get(templateURI);
+        if (template == null || template.isOutdated()) {
+            if (template != null) {
+                reloads++;
+            }
+            template = load(templateURI);
+        }
+        return template;
+    }
+
+    /**
+     * @return an estimate of the heap used by the parsed templates, in bytes
+     */
+    public long getMemoryFootprint() {
+        long bytes = 0;
+        for (CachedTemplate template : templates.values()) {
+            bytes += template.blocks.getMemoryFootprint();
+        }
+        return bytes;
+    }
+
+    @Command(shortDescription = "Prints the structure templates cached by Lost", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostTemplateCache() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, CachedTemplate> entry : templates.entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue().blocks.size()).append(" blocks\n");
+        }
+        builder.append("about ").append(getMemoryFootprint() / 1024).append(" KiB, ")
+                .append(reloads).append(" templates parsed again after a reload");
+        return builder.toString();
+    }
+
+    private CachedTemplate load(String templateURI) {
+        Prefab prefab = assetManager.getAsset(templateURI, Prefab.class).orElse(null);
+        if (prefab == null) {
+            logger.error("Structure template {} not found", templateURI);
+            templates.remove(templateURI);
+            return null;
+        }
+        CachedTemplate template = new CachedTemplate(prefab);
+        templates.put(templateURI, template);
+        return template;
+    }
+
+    /**
+     * A structure template prefab together with its parsed blocks.
+     */
+    public static final class CachedTemplate {
+        private final Prefab prefab;
+        // the component the blocks were parsed from
+        private final SpawnBlockRegionsComponent source;
+        private final StructureTemplateBlocks blocks;
+
+        private CachedTemplate(Prefab prefab) {
+            this.prefab = prefab;
+            this.source = prefab.getComponent(SpawnBlockRegionsComponent.class);
+            this.blocks = StructureTemplateBlocks.of(prefab);
+        }
+
+        public Prefab getPrefab() {
+            return prefab;
+        }
+
+        public StructureTemplateBlocks getBlocks() {
+            return blocks;
+        }
+
+        private boolean isOutdated() {
+            return prefab.isDisposed() || prefab.getComponent(SpawnBlockRegionsComponent.class) != source;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.players.event.OnPlayerSpawnedEvent;
 import org.terasology.engine.registry.In;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.lost.metrics.SimulatedPlayerComponent;
 import org.terasology.module.inventory.components.InventoryComponent;
 import org.terasology.module.inventory.systems.InventoryManager;
 
@@ -35,6 +36,9 @@ public class OnSpawnBooksIntegration extends BaseComponentSystem {
 
     @ReceiveEvent
     public void onPlayerSpawn(OnPlayerSpawnedEvent event, EntityRef player, InventoryComponent inventory) {
+        if (player.hasComponent(SimulatedPlayerComponent.class)) {
+            return;
+        }
         inventoryManager.giveItem(player, null, entityManager.create("Lost:spaceStoriesBook"));
         inventoryManager.giveItem(player, null, entityManager.create("Books:quill"));
     }
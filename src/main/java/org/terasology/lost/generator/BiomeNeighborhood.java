@@ -0,0 +1,154 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.biome.WhittakerBiome;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Biome categories of all regions of a {@link Graph}, stored as bitmasks. Next to the categories of a region itself,
+ * the categories of its direct neighbours and of everything up to two hops away are precomputed, so checks on the
+ * surroundings of a region are a few bit operations instead of repeated {@link BiomeModel#getBiome} calls.
+ * <p>
+ * Regions are addressed by their position in {@link Graph#getRegions()}.
+ */
+public final class BiomeNeighborhood {
+    public static final int OCEAN = 1;
+    public static final int FOREST = 1 << 1;
+    public static final int DESERT = 1 << 2;
+    public static final int LAKE = 1 << 3;
+    public static final int BEACH = 1 << 4;
+
+    private static final int[] BIOME_CATEGORIES = new int[WhittakerBiome.values().length];
+
+    // graphs are reused by the facet provider caches, so is the neighbourhood computed for them
+    private static final Map<Graph, BiomeNeighborhood> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static {
+        BIOME_CATEGORIES[WhittakerBiome.OCEAN.ordinal()] = OCEAN;
+        BIOME_CATEGORIES[WhittakerBiome.LAKE.ordinal()] = LAKE;
+        BIOME_CATEGORIES[WhittakerBiome.BEACH.ordinal()] = BEACH;
+        BIOME_CATEGORIES[WhittakerBiome.TROPICAL_SEASONAL_FOREST.ordinal()] = FOREST;
+        BIOME_CATEGORIES[WhittakerBiome.TROPICAL_RAIN_FOREST.ordinal()] = FOREST;
+        BIOME_CATEGORIES[WhittakerBiome.TEMPERATE_DECIDUOUS_FOREST.ordinal()] = FOREST;
+        BIOME_CATEGORIES[WhittakerBiome.TEMPERATE_RAIN_FOREST.ordinal()] = FOREST;
+        BIOME_CATEGORIES[WhittakerBiome.TEMPERATE_DESERT.ordinal()] = DESERT;
+        BIOME_CATEGORIES[WhittakerBiome.SUBTROPICAL_DESERT.ordinal()] = DESERT;
+    }
+
+    // categories of the region itself
+    private final int[] categories;
+    // categories of the direct neighbours
+    private final int[] adjacent;
+    // categories of the region, its neighbours and their neighbours
+    private final int[] nearby;
+
+    private BiomeNeighborhood(Graph graph, BiomeModel biomeModel) {
+        List<GraphRegion> regions = graph.getRegions();
+        int count = regions.size();
+        Map<GraphRegion, Integer> indices = new IdentityHashMap<>(count);
+        categories = new int[count];
+        for (int i = 0; i < count; i++) {
+            GraphRegion region = regions.get(i);
+            indices.put(region, i);
+            categories[i] = getBiomeCategories(biomeModel.getBiome(region));
+        }
+
+        adjacent = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (GraphRegion neighbour : regions.get(i).getNeighbors()) {
+                adjacent[i] |= categoriesOf(neighbour, indices, biomeModel);
+            }
+        }
+
+        nearby = new int[count];
+        for (int i = 0; i < count; i++) {
+            int mask = categories[i] | adjacent[i];
+            for (GraphRegion neighbour : regions.get(i).getNeighbors()) {
+                Integer index = indices.get(neighbour);
+                mask |= index != null ? adjacent[index] : adjacentOf(neighbour, indices, biomeModel);
+            }
+            nearby[i] = mask;
+        }
+    }
+
+    /**
+     * Returns the (cached) neighbourhood of all regions of the given graph.
+     */
+    public static BiomeNeighborhood of(Graph graph, BiomeModel biomeModel) {
+        // computed outside the lock, so that graphs checked concurrently don't wait for each other
+        BiomeNeighborhood cached = CACHE.get(graph);
+        if (cached == null) {
+            cached = compute(graph, biomeModel);
+            BiomeNeighborhood previous = CACHE.putIfAbsent(graph, cached);
+            if (previous != null) {
+                cached = previous;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Computes the neighbourhood of all regions of the given graph, without caching it.
+     */
+    static BiomeNeighborhood compute(Graph graph, BiomeModel biomeModel) {
+        return new BiomeNeighborhood(graph, biomeModel);
+    }
+
+    /**
+     * @return the category bits of the given biome, 0 if it belongs to none of them
+     */
+    public static int getBiomeCategories(WhittakerBiome biome) {
+        return BIOME_CATEGORIES[biome.ordinal()];
+    }
+
+    public int size() {
+        return categories.length;
+    }
+
+    /**
+     * @param index the index of the region in {@link Graph#getRegions()}
+     * @return the categories of the region itself
+     */
+    public int getCategories(int index) {
+        return categories[index];
+    }
+
+    /**
+     * @param index the index of the region in {@link Graph#getRegions()}
+     * @return the categories of all direct neighbours of the region
+     */
+    public int getAdjacent(int index) {
+        return adjacent[index];
+    }
+
+    /**
+     * @param index the index of the region in {@link Graph#getRegions()}
+     * @return the categories of the region and all regions at most two hops away from it
+     */
+    public int getNearby(int index) {
+        return nearby[index];
+    }
+
+    // neighbours are normally part of the same graph, regions of other graphs are classified directly
+    private int categoriesOf(GraphRegion region, Map<GraphRegion, Integer> indices, BiomeModel biomeModel) {
+        Integer index = indices.get(region);
+        return index != null ? categories[index] : getBiomeCategories(biomeModel.getBiome(region));
+    }
+
+    private int adjacentOf(GraphRegion region, Map<GraphRegion, Integer> indices, BiomeModel biomeModel) {
+        int mask = 0;
+        for (GraphRegion neighbour : region.getNeighbors()) {
+            mask |= categoriesOf(neighbour, indices, biomeModel);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,221 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2i;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.generation.Region;
+import org.terasology.engine.world.generation.World;
+import org.terasology.engine.world.generation.facets.ElevationFacet;
+import org.terasology.engine.world.generation.facets.SurfacesFacet;
+import org.terasology.lost.metrics.LostMetrics;
+import org.terasology.polyworld.biome.WhittakerBiomeModelFacet;
+import org.terasology.polyworld.graph.GraphFacet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the world data of recently used square tiles of the world, so that facet lookups for positions close to each
+ * other don't generate the facets again. Tiles are keyed by their coarse coordinates, i.e. the world position divided
+ * by {@link #TILE_SIZE}. The least recently used tiles are dropped once the capacity is exceeded. The capacity can
+ * additionally be bounded by memory, based on an estimate of the size of a tile. This class is thread safe.
+ * <p>
+ * The world data of a tile computes its facets lazily and isn't safe to be used by several threads, so a tile only
+ * holds the facets served by the cache. They are all computed by the thread generating the tile, before the tile is
+ * published to other threads.
+ */
+public class FacetTileCache {
+    // edge length of a tile in blocks
+    public static final int TILE_SIZE = 256;
+    // rough estimate of the heap used by the facets of one tile, mainly the per column and per block facets
+    public static final long ESTIMATED_TILE_BYTES = 1L << 20;
+
+    private final World world;
+    private final Map<Vector2i, Tile> tiles;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final int capacity;
+
+    public FacetTileCache(World world, int capacity) {
+        this(world, capacity, 0);
+    }
+
+    /**
+     * @param capacity the maximum number of tiles kept
+     * @param maxBytes the maximum estimated memory used by the tiles, 0 for no bound
+     */
+    public FacetTileCache(World world, int capacity, long maxBytes) {
+        this.world = world;
+        this.capacity = maxBytes > 0 ? (int) Math.max(1, Math.min(capacity, maxBytes / ESTIMATED_TILE_BYTES))
+                : Math.max(1, capacity);
+        this.tiles = new LinkedHashMap<Vector2i, Tile>(this.capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Vector2i, Tile> eldest) {
+                if (size() > FacetTileCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    LostMetrics.FACET_TILE_EVICTIONS.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the facets of the tile containing the given column. Facets are generated for the layers 0 to 2.
+     */
+    public Tile getTile(int x, int z) {
+        Vector2i key = new Vector2i(Math.floorDiv(x, TILE_SIZE), Math.floorDiv(z, TILE_SIZE));
+        Tile tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            hits.incrementAndGet();
+            LostMetrics.FACET_TILE_HITS.increment();
+        } else {
+            misses.incrementAndGet();
+            LostMetrics.FACET_TILE_MISSES.increment();
+            LostMetrics.FACET_COLUMNS.add((long) TILE_SIZE * TILE_SIZE);
+            // generated outside the lock, so that lookups of other tiles aren't blocked meanwhile
+            BlockRegion area = new BlockRegion(key.x * TILE_SIZE, 0, key.y * TILE_SIZE,
+                    key.x * TILE_SIZE + TILE_SIZE - 1, 2, key.y * TILE_SIZE + TILE_SIZE - 1);
+            Tile generated = new Tile(world.getWorldData(area));
+            synchronized (tiles) {
+                tile = tiles.putIfAbsent(key, generated);
+            }
+            if (tile == null) {
+                tile = generated;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Fills the surface heights of an area row by row into an array of sizeX * sizeZ entries: the height of the primary
+     * surface of each column, or its elevation if there is none, rounded to whole blocks.
+     */
+    public int[] getSurfaceHeights(int minX, int minZ, int sizeX, int sizeZ) {
+        return sampleHeights(minX, minZ, sizeX, sizeZ, true);
+    }
+
+    /**
+     * Fills the rounded elevations of an area row by row into an array of sizeX * sizeZ entries.
+     */
+    public int[] getElevations(int minX, int minZ, int sizeX, int sizeZ) {
+        return sampleHeights(minX, minZ, sizeX, sizeZ, false);
+    }
+
+    private int[] sampleHeights(int minX, int minZ, int sizeX, int sizeZ, boolean surface) {
+        int[] heights = new int[sizeX * sizeZ];
+        // walk the area tile by tile, so that every tile is only looked up once
+        for (int tileZ = Math.floorDiv(minZ, TILE_SIZE) * TILE_SIZE; tileZ < minZ + sizeZ; tileZ += TILE_SIZE) {
+            for (int tileX = Math.floorDiv(minX, TILE_SIZE) * TILE_SIZE; tileX < minX + sizeX; tileX += TILE_SIZE) {
+                Tile tile = getTile(tileX, tileZ);
+                SurfacesFacet surfacesFacet = surface ? tile.getSurfacesFacet() : null;
+                ElevationFacet elevationFacet = tile.getElevationFacet();
+                int endX = Math.min(tileX + TILE_SIZE, minX + sizeX);
+                int endZ = Math.min(tileZ + TILE_SIZE, minZ + sizeZ);
+                for (int z = Math.max(tileZ, minZ); z < endZ; z++) {
+                    for (int x = Math.max(tileX, minX); x < endX; x++) {
+                        float height = elevationFacet.getWorld(x, z);
+                        if (surfacesFacet != null) {
+                            height = surfacesFacet.getPrimarySurface(elevationFacet, x, z).orElse(height);
+                        }
+                        heights[(z - minZ) * sizeX + x - minX] = Math.round(height);
+                    }
+                }
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * @return whether all tiles covering the given area are cached, without counting as a lookup
+     */
+    public boolean containsArea(int minX, int minZ, int sizeX, int sizeZ) {
+        synchronized (tiles) {
+            for (int z = Math.floorDiv(minZ, TILE_SIZE); z <= Math.floorDiv(minZ + sizeZ - 1, TILE_SIZE); z++) {
+                for (int x = Math.floorDiv(minX, TILE_SIZE); x <= Math.floorDiv(minX + sizeX - 1, TILE_SIZE); x++) {
+                    if (!tiles.containsKey(new Vector2i(x, z))) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of lookups served from a cached tile
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups which had to generate their tile
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of tiles dropped to stay within the capacity
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the maximum number of tiles kept, after applying the memory bound
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of tiles currently cached
+     */
+    public int size() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * The facets of a tile, all computed when the tile is created and only read afterwards.
+     */
+    public static final class Tile {
+        private final GraphFacet graphFacet;
+        private final WhittakerBiomeModelFacet biomeModelFacet;
+        private final ElevationFacet elevationFacet;
+        private final SurfacesFacet surfacesFacet;
+
+        private Tile(Region region) {
+            graphFacet = region.getFacet(GraphFacet.class);
+            biomeModelFacet = region.getFacet(WhittakerBiomeModelFacet.class);
+            elevationFacet = region.getFacet(ElevationFacet.class);
+            surfacesFacet = region.getFacet(SurfacesFacet.class);
+        }
+
+        public GraphFacet getGraphFacet() {
+            return graphFacet;
+        }
+
+        public WhittakerBiomeModelFacet getBiomeModelFacet() {
+            return biomeModelFacet;
+        }
+
+        public ElevationFacet getElevationFacet() {
+            return elevationFacet;
+        }
+
+        public SurfacesFacet getSurfacesFacet() {
+            return surfacesFacet;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.facets.base.BaseFacet2D;
+import org.terasology.lost.LostLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The level sites whose structures may reach into the region, as chosen by the {@link LevelSitePlanner}.
+ */
+public class LevelSiteFacet extends BaseFacet2D {
+    private final List<Site> sites = new ArrayList<>();
+
+    public LevelSiteFacet(BlockRegionc targetRegion, Border3D border) {
+        super(targetRegion, border);
+    }
+
+    public void add(LostLevel level, Vector3ic position) {
+        sites.add(new Site(level, position));
+    }
+
+    public List<Site> getSites() {
+        return Collections.unmodifiableList(sites);
+    }
+
+    public static final class Site {
+        private final LostLevel level;
+        private final Vector3i position;
+
+        Site(LostLevel level, Vector3ic position) {
+            this.level = level;
+            this.position = new Vector3i(position);
+        }
+
+        public LostLevel getLevel() {
+            return level;
+        }
+
+        /**
+         * @return the origin the structure template of the level is spawned at
+         */
+        public Vector3ic getPosition() {
+            return position;
+        }
+    }
+}
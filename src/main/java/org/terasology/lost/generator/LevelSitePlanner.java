@@ -0,0 +1,131 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2fc;
+import org.joml.Vector3i;
+import org.terasology.lost.LostLevel;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Chooses the voronoi region every {@link LostLevel} is placed in, at most one per level and {@link Graph}. Of all
+ * regions with a biome of the level the one with the lowest hash of its centre is chosen, skipping regions too close to
+ * the sites of the levels chosen before. The choice only depends on the graph, its {@link BiomeModel} and the
+ * elevations within the regions, which in turn only depend on the world seed, so world generation and the runtime
+ * systems agree on the sites without sharing any state.
+ */
+public final class LevelSitePlanner {
+    // minimum distance between the centres of two sites of the same graph, so that the structures don't overlap
+    private static final int MIN_SITE_SPACING = 64;
+
+    // graphs are reused by the facet provider caches, so are the sites chosen in them
+    private static final Map<Graph, LevelSitePlanner> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // the region of each level, indexed by its ordinal, null if the graph has no region for it
+    private final GraphRegion[] sites = new GraphRegion[LostLevel.values().length];
+    // the position within the region of each level, indexed by its ordinal, null until it is first requested
+    private final AtomicReferenceArray<Vector3i> positions = new AtomicReferenceArray<>(LostLevel.values().length);
+
+    private LevelSitePlanner(Graph graph, BiomeModel biomeModel) {
+        List<List<GraphRegion>> candidates = new ArrayList<>();
+        for (int i = 0; i < sites.length; i++) {
+            candidates.add(new ArrayList<>());
+        }
+        for (GraphRegion region : graph.getRegions()) {
+            LostLevel level = LostLevel.forBiome(biomeModel.getBiome(region));
+            if (level != null) {
+                candidates.get(level.ordinal()).add(region);
+            }
+        }
+
+        List<GraphRegion> chosen = new ArrayList<>();
+        for (LostLevel level : LostLevel.values()) {
+            GraphRegion best = null;
+            long bestHash = 0;
+            for (GraphRegion region : candidates.get(level.ordinal())) {
+                Vector2fc center = region.getCenter();
+                long hash = hash(Math.round(center.x()), Math.round(center.y()));
+                // hashes are compared unsigned, every value is a valid hash
+                if ((best == null || Long.compareUnsigned(hash, bestHash) < 0) && !isTooClose(region, chosen)) {
+                    best = region;
+                    bestHash = hash;
+                }
+            }
+            if (best != null) {
+                sites[level.ordinal()] = best;
+                chosen.add(best);
+            }
+        }
+    }
+
+    /**
+     * Returns the (cached) level sites of the given graph.
+     */
+    public static LevelSitePlanner of(Graph graph, BiomeModel biomeModel) {
+        // computed outside the lock, so that graphs checked concurrently don't wait for each other
+        LevelSitePlanner cached = CACHE.get(graph);
+        if (cached == null) {
+            cached = new LevelSitePlanner(graph, biomeModel);
+            LevelSitePlanner previous = CACHE.putIfAbsent(graph, cached);
+            if (previous != null) {
+                cached = previous;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @return the region the given level is placed in, null if the graph has none for it
+     */
+    public GraphRegion getSite(LostLevel level) {
+        return sites[level.ordinal()];
+    }
+
+    /**
+     * Returns the position the given level is spawned at, chosen by the {@link LevelSiteSelector} on the first call.
+     *
+     * @param sampler provides the elevations around the region of the level
+     * @return the position, null if the graph has no region for the level
+     */
+    public Vector3i getSitePosition(LostLevel level, LevelSiteSelector.ElevationSampler sampler) {
+        GraphRegion site = sites[level.ordinal()];
+        if (site == null) {
+            return null;
+        }
+        Vector3i position = positions.get(level.ordinal());
+        if (position == null) {
+            // chosen outside any lock, so that chunk threads touching the graph don't wait for each other; concurrent
+            // callers choose the same position, the first one is kept
+            position = LevelSiteSelector.select(level, site, sampler);
+            if (!positions.compareAndSet(level.ordinal(), null, position)) {
+                position = positions.get(level.ordinal());
+            }
+        }
+        return new Vector3i(position);
+    }
+
+    private static boolean isTooClose(GraphRegion region, List<GraphRegion> chosen) {
+        for (GraphRegion other : chosen) {
+            if (region.getCenter().distanceSquared(other.getCenter()) < MIN_SITE_SPACING * MIN_SITE_SPACING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long hash(int x, int z) {
+        long h = x * 0x9E3779B97F4A7C15L ^ z * 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3i;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.Facet;
+import org.terasology.engine.world.generation.FacetBorder;
+import org.terasology.engine.world.generation.FacetProvider;
+import org.terasology.engine.world.generation.GeneratingRegion;
+import org.terasology.engine.world.generation.Produces;
+import org.terasology.engine.world.generation.Requires;
+import org.terasology.lost.LostLevel;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.biome.WhittakerBiomeModelFacet;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphFacet;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.function.Supplier;
+
+/**
+ * Finds the level sites close enough to a region for their structures to reach into it. The graphs are requested with a
+ * border of {@link #MAX_EXTENT} plus the {@link LevelSiteSelector#SEARCH_RADIUS}, so that sites of neighbouring
+ * regions are found as well. The elevations around a site are sampled once, when its position is first chosen, from
+ * the {@link FacetTileCache} shared with the {@link LostWorldQueryService}, instead of being requested with an even
+ * larger border for every region. The tiles only hold facets which don't depend on this provider.
+ */
+@Produces(LevelSiteFacet.class)
+@Requires({
+        @Facet(value = GraphFacet.class, border = @FacetBorder(sides = LevelSiteProvider.REACH)),
+        @Facet(value = WhittakerBiomeModelFacet.class, border = @FacetBorder(sides = LevelSiteProvider.REACH))
+})
+public class LevelSiteProvider implements FacetProvider {
+    // the largest distance of a block of any level structure from its origin, horizontally and vertically
+    public static final int MAX_EXTENT = 64;
+    // the largest distance of a block of any level structure from the centre of its region
+    static final int REACH = MAX_EXTENT + LevelSiteSelector.SEARCH_RADIUS;
+
+    private final Supplier<FacetTileCache> tiles;
+
+    public LevelSiteProvider(Supplier<FacetTileCache> tiles) {
+        this.tiles = tiles;
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        Border3D border = region.getBorderForFacet(LevelSiteFacet.class);
+        LevelSiteFacet facet = new LevelSiteFacet(region.getRegion(), border);
+        GraphFacet graphFacet = region.getRegionFacet(GraphFacet.class);
+        WhittakerBiomeModelFacet biomeModelFacet = region.getRegionFacet(WhittakerBiomeModelFacet.class);
+        BlockRegionc area = region.getRegion();
+
+        for (Graph graph : graphFacet.getAllGraphs()) {
+            BiomeModel biomeModel = biomeModelFacet.get(graph);
+            LevelSitePlanner planner = LevelSitePlanner.of(graph, biomeModel);
+            for (LostLevel level : LostLevel.values()) {
+                GraphRegion site = planner.getSite(level);
+                if (site == null || !isInReach(site, area)) {
+                    continue;
+                }
+                Vector3i position = planner.getSitePosition(level, tiles.get()::getElevations);
+                if (position.x + MAX_EXTENT >= area.minX() && position.x - MAX_EXTENT <= area.maxX()
+                        && position.y + MAX_EXTENT >= area.minY() && position.y - MAX_EXTENT <= area.maxY()
+                        && position.z + MAX_EXTENT >= area.minZ() && position.z - MAX_EXTENT <= area.maxZ()) {
+                    facet.add(level, position);
+                }
+            }
+        }
+        region.setRegionFacet(LevelSiteFacet.class, facet);
+    }
+
+    private static boolean isInReach(GraphRegion site, BlockRegionc area) {
+        int x = Math.round(site.getCenter().x());
+        int z = Math.round(site.getCenter().y());
+        return x >= area.minX() - REACH && x <= area.maxX() + REACH
+                && z >= area.minZ() - REACH && z <= area.maxZ() + REACH;
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.generation.Facet;
+import org.terasology.engine.world.generation.Region;
+import org.terasology.engine.world.generation.Requires;
+import org.terasology.engine.world.generation.WorldRasterizer;
+import org.terasology.lost.LostLevel;
+
+/**
+ * Writes the blocks of the level structures into the chunks they reach into. Everything else of the structure templates
+ * (chests, traps, ...) needs entities and is spawned at runtime, once a player discovers the level. The blocks are
+ * taken from {@link StructureTemplateBlocks#of(String)}, so chunks generated after a template was reloaded use the new
+ * template.
+ */
+@Requires(@Facet(LevelSiteFacet.class))
+public class LevelSiteRasterizer implements WorldRasterizer {
+    private static final Logger logger = LoggerFactory.getLogger(LevelSiteRasterizer.class);
+
+    @Override
+    public void initialize() {
+        for (LostLevel level : LostLevel.values()) {
+            if (!Assets.getPrefab(level.getPrefab()).isPresent()) {
+                logger.error("Level prefab {} not found, the level is not generated", level.getPrefab());
+            }
+        }
+    }
+
+    @Override
+    public void generateChunk(Chunk chunk, Region chunkRegion) {
+        LevelSiteFacet facet = chunkRegion.getFacet(LevelSiteFacet.class);
+        BlockRegionc area = chunk.getRegion();
+        for (LevelSiteFacet.Site site : facet.getSites()) {
+            StructureTemplateBlocks template = StructureTemplateBlocks.of(site.getLevel().getPrefab());
+            Vector3ic origin = site.getPosition();
+            for (int i = 0; i < template.size(); i++) {
+                int x = origin.x() + template.getX(i);
+                int y = origin.y() + template.getY(i);
+                int z = origin.z() + template.getZ(i);
+                if (area.contains(x, y, z)) {
+                    chunk.setBlock(x - area.minX(), y - area.minY(), z - area.minZ(), template.getBlock(i));
+                }
+            }
+        }
+    }
+}
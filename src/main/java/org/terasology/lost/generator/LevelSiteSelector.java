@@ -0,0 +1,154 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2fc;
+import org.joml.Vector3i;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.lost.LostLevel;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the origin a level is spawned at within its voronoi region. Every origin within {@link #SEARCH_RADIUS} of the
+ * centre of the region whose footprint lies completely inside the region is scored by the variance of the elevation
+ * under the footprint, the share of the footprint below sea level and its distance from the centre. The origin with the
+ * lowest score wins, the centre itself if the footprint fits nowhere.
+ * <p>
+ * The search is restricted to the square of {@link #SEARCH_RADIUS} around the centre, not every position in the region
+ * polygon: in regions reaching farther, origins beyond that square are never considered, even if the footprint would
+ * fit there. This bounds the sampled area to the footprint plus twice the radius along each axis.
+ * <p>
+ * The elevations of the search area are sampled once and turned into prefix sums, so that every origin is scored in
+ * constant time.
+ */
+public final class LevelSiteSelector {
+    // the largest distance of an origin from the centre of its region, along both axes
+    public static final int SEARCH_RADIUS = 48;
+
+    // score of a footprint completely under water, comparable to the variance of its elevation
+    private static final double WATER_PENALTY = 64;
+    // score of a footprint SEARCH_RADIUS blocks away from the centre
+    private static final double DISTANCE_PENALTY = 1;
+
+    /**
+     * Provides the elevations of an area, rounded to whole blocks and row by row.
+     */
+    @FunctionalInterface
+    public interface ElevationSampler {
+        int[] sample(int minX, int minZ, int sizeX, int sizeZ);
+    }
+
+    private LevelSiteSelector() {
+    }
+
+    /**
+     * @return the origin the given level is spawned at within the given region
+     */
+    public static Vector3i select(LostLevel level, GraphRegion region, ElevationSampler sampler) {
+        Vector2fc center = region.getCenter();
+        int centerX = Math.round(center.x());
+        int centerZ = Math.round(center.y());
+        BlockRegion footprint = getFootprint(level);
+        int sizeX = footprint.getSizeX();
+        int sizeZ = footprint.getSizeZ();
+        int minX = centerX - SEARCH_RADIUS + footprint.minX();
+        int minZ = centerZ - SEARCH_RADIUS + footprint.minZ();
+        int areaX = 2 * SEARCH_RADIUS + sizeX;
+        int areaZ = 2 * SEARCH_RADIUS + sizeZ;
+        int[] elevations = sampler.sample(minX, minZ, areaX, areaZ);
+        int[] water = new int[elevations.length];
+        for (int i = 0; i < elevations.length; i++) {
+            water[i] = elevations[i] < LostWorldGenerator.SEA_LEVEL ? 1 : 0;
+        }
+        SummedAreaHeights heights = new SummedAreaHeights(elevations, areaX, areaZ);
+        SummedAreaHeights waterColumns = new SummedAreaHeights(water, areaX, areaZ);
+        int area = sizeX * sizeZ;
+        // the centres relative to the centre of the region, the region itself first
+        float[] centers = centersOf(region);
+
+        int bestX = centerX;
+        int bestZ = centerZ;
+        double bestScore = Double.MAX_VALUE;
+        for (int dz = -SEARCH_RADIUS; dz <= SEARCH_RADIUS; dz++) {
+            for (int dx = -SEARCH_RADIUS; dx <= SEARCH_RADIUS; dx++) {
+                int x = centerX + dx;
+                int z = centerZ + dz;
+                if (!isInside(centers, dx + footprint.minX(), dz + footprint.minZ(), dx + footprint.maxX(),
+                        dz + footprint.maxZ())) {
+                    continue;
+                }
+                int footprintX = dx + SEARCH_RADIUS;
+                int footprintZ = dz + SEARCH_RADIUS;
+                double score = heights.getVariance(footprintX, footprintZ, sizeX, sizeZ)
+                        + WATER_PENALTY * waterColumns.getSum(footprintX, footprintZ, sizeX, sizeZ) / area
+                        + DISTANCE_PENALTY * (dx * dx + dz * dz) / (SEARCH_RADIUS * SEARCH_RADIUS);
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestX = x;
+                    bestZ = z;
+                }
+            }
+        }
+        if (bestScore == Double.MAX_VALUE) {
+            int[] elevation = sampler.sample(centerX, centerZ, 1, 1);
+            return new Vector3i(centerX, elevation[0], centerZ);
+        }
+        int footprintX = bestX - centerX + SEARCH_RADIUS;
+        int footprintZ = bestZ - centerZ + SEARCH_RADIUS;
+        int y = (int) Math.round(heights.getMean(footprintX, footprintZ, sizeX, sizeZ));
+        return new Vector3i(bestX, y, bestZ);
+    }
+
+    /**
+     * @return the horizontal bounds of the blocks of the given level, relative to its origin
+     */
+    public static BlockRegion getFootprint(LostLevel level) {
+        BlockRegion bounds = StructureTemplateBlocks.of(level.getPrefab()).getBounds();
+        return new BlockRegion(bounds.minX(), 0, bounds.minZ(), bounds.maxX(), 0, bounds.maxZ());
+    }
+
+    private static float[] centersOf(GraphRegion region) {
+        Vector2fc center = region.getCenter();
+        float originX = Math.round(center.x());
+        float originZ = Math.round(center.y());
+        List<GraphRegion> neighbours = new ArrayList<>();
+        region.getNeighbors().forEach(neighbours::add);
+        float[] centers = new float[2 * (neighbours.size() + 1)];
+        centers[0] = center.x() - originX;
+        centers[1] = center.y() - originZ;
+        for (int i = 0; i < neighbours.size(); i++) {
+            centers[2 * i + 2] = neighbours.get(i).getCenter().x() - originX;
+            centers[2 * i + 3] = neighbours.get(i).getCenter().y() - originZ;
+        }
+        return centers;
+    }
+
+    /**
+     * Checks whether a rectangle lies inside the region of the first of the given centres. Voronoi regions are convex
+     * and contain the columns closer to their centre than to the centre of any neighbour, so it suffices to check the
+     * corners that way.
+     */
+    private static boolean isInside(float[] centers, int minX, int minZ, int maxX, int maxZ) {
+        return isInside(centers, minX, minZ) && isInside(centers, maxX, minZ)
+                && isInside(centers, minX, maxZ) && isInside(centers, maxX, maxZ);
+    }
+
+    private static boolean isInside(float[] centers, int x, int z) {
+        float distance = distanceSquared(centers, 0, x, z);
+        for (int i = 2; i < centers.length; i += 2) {
+            if (distanceSquared(centers, i, x, z) < distance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float distanceSquared(float[] centers, int index, int x, int z) {
+        float dx = centers[index] - x;
+        float dz = centers[index + 1] - z;
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.terasology.engine.utilities.Assets;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Capacities of the caches used while generating and querying the Lost world, read from the {@code Lost:cacheConfig}
+ * prefab. Servers can tune them by overriding the prefab. The facet provider caches hold the models of that many world
+ * regions, the query tiles are described in {@link FacetTileCache}. The prefab also chooses whether the spawn search
+ * checks its graphs in parallel.
+ */
+public class LostCacheConfigComponent implements Component<LostCacheConfigComponent> {
+    public static final String PREFAB = "Lost:cacheConfig";
+
+    public int worldRegions = 20;
+    public int graphs = 20;
+    public int waterModels = 20;
+    public int elevationModels = 20;
+    public int riverModels = 20;
+    public int moistureModels = 20;
+    public int biomeModels = 20;
+    public int queryTiles = 64;
+    // upper bound of the memory used by the query tiles in MiB, 0 to bound them by their number only
+    public int queryTileMemoryMb;
+    // whether the spawn search checks its graphs on the common fork/join pool, see LostWorldGenerator
+    public boolean parallelSpawnSearch = true;
+
+    /**
+     * @return the configuration of the prefab, or the defaults if there is none
+     */
+    public static LostCacheConfigComponent load() {
+        LostCacheConfigComponent config = Assets.getPrefab(PREFAB)
+                .map(prefab -> prefab.getComponent(LostCacheConfigComponent.class))
+                .orElse(null);
+        return config != null ? config : new LostCacheConfigComponent();
+    }
+
+    @Override
+    public void copyFrom(LostCacheConfigComponent other) {
+        this.worldRegions = other.worldRegions;
+        this.graphs = other.graphs;
+        this.waterModels = other.waterModels;
+        this.elevationModels = other.elevationModels;
+        this.riverModels = other.riverModels;
+        this.moistureModels = other.moistureModels;
+        this.biomeModels = other.biomeModels;
+        this.queryTiles = other.queryTiles;
+        this.queryTileMemoryMb = other.queryTileMemoryMb;
+        this.parallelSpawnSearch = other.parallelSpawnSearch;
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of seed determined searches which are kept with the save game, so that they aren't repeated after a restart:
+ * the spawn positions found for the positions players desired to spawn at, and the hut positions chosen for the
+ * columns players spawned at. Only the most recent {@link #MAX_ENTRIES} entries of each kind are kept. This class is
+ * thread safe.
+ */
+public class LostWorldCache {
+    public static final int MAX_ENTRIES = 1024;
+
+    private final Map<Long, Vector3f> spawnPositions = boundedMap();
+    private final Map<Long, Vector3i> hutPositions = boundedMap();
+    private boolean dirty;
+
+    /**
+     * Restores the entries of the given component if they were computed for the same seed and generator version.
+     * Otherwise the cache starts out empty and overwrites the stale entries on the next save.
+     */
+    public static LostWorldCache fromComponent(LostWorldCacheComponent component, String seed, int generatorVersion) {
+        LostWorldCache cache = new LostWorldCache();
+        if (component == null || !seed.equals(component.seed) || component.generatorVersion != generatorVersion) {
+            cache.dirty = component != null;
+            return cache;
+        }
+        for (int i = 0; i < component.spawnKeys.size(); i++) {
+            cache.spawnPositions.put(component.spawnKeys.get(i), new Vector3f(component.spawnPositions.get(i)));
+        }
+        for (int i = 0; i < component.hutKeys.size(); i++) {
+            cache.hutPositions.put(component.hutKeys.get(i), new Vector3i(component.hutPositions.get(i)));
+        }
+        return cache;
+    }
+
+    public synchronized LostWorldCacheComponent toComponent(String seed, int generatorVersion) {
+        LostWorldCacheComponent component = new LostWorldCacheComponent();
+        component.seed = seed;
+        component.generatorVersion = generatorVersion;
+        for (Map.Entry<Long, Vector3f> entry : spawnPositions.entrySet()) {
+            component.spawnKeys.add(entry.getKey());
+            component.spawnPositions.add(new Vector3f(entry.getValue()));
+        }
+        for (Map.Entry<Long, Vector3i> entry : hutPositions.entrySet()) {
+            component.hutKeys.add(entry.getKey());
+            component.hutPositions.add(new Vector3i(entry.getValue()));
+        }
+        dirty = false;
+        return component;
+    }
+
+    /**
+     * @return the spawn position found for the given desired column, null if there is none cached
+     */
+    public synchronized Vector3fc getSpawnPosition(int x, int z) {
+        Vector3f position = spawnPositions.get(key(x, z));
+        return position != null ? new Vector3f(position) : null;
+    }
+
+    public synchronized void putSpawnPosition(int x, int z, Vector3fc position) {
+        spawnPositions.put(key(x, z), new Vector3f(position));
+        dirty = true;
+    }
+
+    /**
+     * @return the hut position chosen for a player spawned at the given column, null if there is none cached
+     */
+    public synchronized Vector3ic getHutPosition(int x, int z) {
+        Vector3i position = hutPositions.get(key(x, z));
+        return position != null ? new Vector3i(position) : null;
+    }
+
+    public synchronized void putHutPosition(int x, int z, Vector3ic position) {
+        hutPositions.put(key(x, z), new Vector3i(position));
+        dirty = true;
+    }
+
+    /**
+     * @return whether there are entries which haven't been stored yet
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Packs a column into a single key, x in the upper and z in the lower 32 bits.
+     */
+    public static long key(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    private static <T> Map<Long, T> boundedMap() {
+        return new LinkedHashMap<Long, T>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import com.google.common.collect.Lists;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contents of a {@link LostWorldCache}, stored with the world entity. Entry i of a key list belongs to entry i of
+ * the position list next to it; keys are packed columns as returned by {@link LostWorldCache#key(int, int)}.
+ */
+public class LostWorldCacheComponent implements Component<LostWorldCacheComponent> {
+    // the world the entries were computed for, they are stale if either differs
+    public String seed;
+    public int generatorVersion;
+
+    public List<Long> spawnKeys = new ArrayList<>();
+    public List<Vector3f> spawnPositions = new ArrayList<>();
+    public List<Long> hutKeys = new ArrayList<>();
+    public List<Vector3i> hutPositions = new ArrayList<>();
+
+    @Override
+    public void copyFrom(LostWorldCacheComponent other) {
+        this.seed = other.seed;
+        this.generatorVersion = other.generatorVersion;
+        this.spawnKeys = Lists.newArrayList(other.spawnKeys);
+        this.spawnPositions = new ArrayList<>();
+        for (Vector3f position : other.spawnPositions) {
+            this.spawnPositions.add(new Vector3f(position));
+        }
+        this.hutKeys = Lists.newArrayList(other.hutKeys);
+        this.hutPositions = new ArrayList<>();
+        for (Vector3i position : other.hutPositions) {
+            this.hutPositions.add(new Vector3i(position));
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.joml.Vector2i;
 import org.joml.Vector3f;
 import org.joml.Vector3fc;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.terasology.core.world.generator.facetProviders.SeaLevelProvider;
 import org.terasology.core.world.generator.facetProviders.SurfaceToDensityProvider;
 import org.terasology.core.world.generator.rasterizers.FloraRasterizer;
@@ -19,13 +20,11 @@ import org.terasology.engine.logic.spawner.FixedSpawner;
 import org.terasology.engine.registry.CoreRegistry;
 import org.terasology.engine.world.block.BlockRegion;
 import org.terasology.engine.world.generation.BaseFacetedWorldGenerator;
-import org.terasology.engine.world.generation.World;
 import org.terasology.engine.world.generation.WorldBuilder;
 import org.terasology.engine.world.generator.RegisterWorldGenerator;
 import org.terasology.engine.world.generator.plugin.WorldGeneratorPluginLibrary;
-import org.terasology.engine.world.viewer.picker.CirclePickerClosest;
+import org.terasology.lost.metrics.LostMetrics;
 import org.terasology.polyworld.biome.BiomeModel;
-import org.terasology.polyworld.biome.WhittakerBiome;
 import org.terasology.polyworld.biome.WhittakerBiomeModelFacet;
 import org.terasology.polyworld.biome.WhittakerBiomeModelProvider;
 import org.terasology.polyworld.biome.WhittakerBiomeProvider;
@@ -45,13 +44,35 @@ import org.terasology.polyworld.rivers.RiverModelFacetProvider;
 import org.terasology.polyworld.rp.WorldRegionFacetProvider;
 import org.terasology.polyworld.water.WaterModelFacetProvider;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 
 @RegisterWorldGenerator(id = "lost", displayName = "Lost", description = "Generates the world for playing the 'Lost' " +
         "exploration world.")
 public class LostWorldGenerator extends BaseFacetedWorldGenerator {
-    public static World world;
     // Radius to search for a suitable spawn location
     private static final int SEARCH_RADIUS = 7000;
+    // Edge length of the tiles the spawn search area is split into
+    private static final int SEARCH_TILE_SIZE = 1000;
+    // Edge length of the grid cells the spawn candidates are indexed by
+    private static final int CANDIDATE_CELL_SIZE = 250;
+
+    // Columns with a lower elevation are under water
+    public static final int SEA_LEVEL = 6;
+
+    // Changes whenever the generated spawn positions or huts would differ, invalidating the persisted LostWorldCache
+    public static final int GENERATOR_VERSION = 3;
+
+    private volatile boolean parallelSpawnSearch = true;
+    private volatile LostCacheConfigComponent cacheConfig;
+    private volatile FacetTileCache tileCache;
+    private volatile LostWorldCache worldCache;
 
     public LostWorldGenerator(SimpleUri uri) {
         super(uri);
@@ -59,114 +80,179 @@ public class LostWorldGenerator extends BaseFacetedWorldGenerator {
 
     @Override
     protected WorldBuilder createWorld() {
-        int maxCacheSize = 20;
+        // the providers only take their cache sizes when they are created
+        LostCacheConfigComponent cacheConfig = LostCacheConfigComponent.load();
+        this.cacheConfig = cacheConfig;
+        setParallelSpawnSearch(cacheConfig.parallelSpawnSearch);
         return new WorldBuilder(CoreRegistry.get(WorldGeneratorPluginLibrary.class))
-            .setSeaLevel(6)
-            .addProvider(new SeaLevelProvider(6))
-            .addProvider(new WorldRegionFacetProvider(maxCacheSize, 1f))
-            .addProvider(new GraphFacetProvider(maxCacheSize, 0.1f, 2))
-            .addProvider(new WaterModelFacetProvider(maxCacheSize))
-            .addProvider(new ElevationModelFacetProvider(maxCacheSize))
+            .setSeaLevel(SEA_LEVEL)
+            .addProvider(new SeaLevelProvider(SEA_LEVEL))
+            .addProvider(new WorldRegionFacetProvider(cacheConfig.worldRegions, 1f))
+            .addProvider(new GraphFacetProvider(cacheConfig.graphs, 0.1f, 2))
+            .addProvider(new WaterModelFacetProvider(cacheConfig.waterModels))
+            .addProvider(new ElevationModelFacetProvider(cacheConfig.elevationModels))
             .addProvider(new ElevationProvider())
             .addProvider(new SurfaceToDensityProvider())
-            .addProvider(new RiverModelFacetProvider(maxCacheSize))
+            .addProvider(new RiverModelFacetProvider(cacheConfig.riverModels))
             .addProvider(new FlatLakeProvider())
-            .addProvider(new MoistureModelFacetProvider(maxCacheSize))
-            .addProvider(new WhittakerBiomeModelProvider(maxCacheSize))
+            .addProvider(new MoistureModelFacetProvider(cacheConfig.moistureModels))
+            .addProvider(new WhittakerBiomeModelProvider(cacheConfig.biomeModels))
             .addProvider(new WhittakerBiomeProvider())
             .addProvider(new TreeProvider())
             .addProvider(new FloraProvider())
+            .addProvider(new LevelSiteProvider(this::getTileCache))
             .addRasterizer(new WhittakerRasterizer())
             .addRasterizer(new RiverRasterizer())
             .addRasterizer(new TreeRasterizer())
             .addRasterizer(new FloraRasterizer())
+            // after the terrain and vegetation, so that the structures replace them
+            .addRasterizer(new LevelSiteRasterizer())
             .addPlugins();
     }
 
     @Override
     public Vector3fc getSpawnPosition(EntityRef entity) {
+        long start = LostMetrics.start();
         LocationComponent loc = entity.getComponent(LocationComponent.class);
         Vector3f pos = loc.getWorldPosition(new Vector3f());
         Vector3i ext = new Vector3i(SEARCH_RADIUS, 1, SEARCH_RADIUS);
         Vector3i desiredPos = new Vector3i(new Vector3f(pos.x(), 1, pos.z()), RoundingMode.FLOOR);
+        LostWorldCache cache = worldCache;
+        Vector3fc cachedPosition = cache != null ? cache.getSpawnPosition(desiredPos.x(), desiredPos.z()) : null;
+        if (cachedPosition != null) {
+            LostMetrics.SPAWN_POSITION.stop(start);
+            return cachedPosition;
+        }
 
-        // try and find somewhere in this region a spot to land
+        // the spawn must lie somewhere in this region
         BlockRegion searchArea = new BlockRegion(desiredPos).expand(ext);
-        org.terasology.engine.world.generation.Region worldRegion = getWorld().getWorldData(searchArea);
-        world = getWorld();
-        // graphs contains all graphs relevant within a radius of 7000 blocks from (0,0,0)
-        GraphFacet graphs = worldRegion.getFacet(GraphFacet.class);
-        WhittakerBiomeModelFacet model = worldRegion.getFacet(WhittakerBiomeModelFacet.class);
-        org.joml.Vector2f pos2d = new org.joml.Vector2f(pos.x(), pos.z());
-        CirclePickerClosest<GraphRegion> picker = new CirclePickerClosest<>(pos2d);
-        boolean locationFound = false;
-        // searches for a spawn point such that it contains all the biomes required nearby
-        for (Graph g : graphs.getAllGraphs()) {
-            BiomeModel biomeModel = model.get(g);
-            for (GraphRegion r : g.getRegions()) {
-                WhittakerBiome biome = biomeModel.getBiome(r);
-                boolean ocean = false;
-                boolean forest = false;
-                boolean desert = false;
-                if (biomeModel.getBiome(r).equals(WhittakerBiome.OCEAN)) {
-                    continue;
-                }
-                if (isDesertBiome(r, biomeModel)) {
-                    desert = true;
-                }
-                if (isForestBiome(r, biomeModel)) {
-                    forest = true;
-                }
-                for (GraphRegion neighbour : r.getNeighbors()) {
-                    if (biomeModel.getBiome(neighbour).equals(WhittakerBiome.OCEAN)) {
-                        ocean = true;
-                        break;
-                    }
-                    if (isDesertBiome(neighbour, biomeModel)) {
-                        desert = true;
-                    }
-                    if (isForestBiome(neighbour, biomeModel)) {
-                        forest = true;
+        NearestPointIndex<GraphRegion> candidates = new NearestPointIndex<>(CANDIDATE_CELL_SIZE);
+        // graphs usually span several tiles, they only need to be checked once
+        Set<Graph> checkedGraphs = Collections.newSetFromMap(new IdentityHashMap<>());
+        // the graphs first found in the current ring, in the order they were found
+        List<Graph> ringGraphs = new ArrayList<>();
+        List<BiomeModel> ringModels = new ArrayList<>();
+
+        // search outwards from the desired position one ring of tiles at a time, so that facets are only generated
+        // for the tiles that are actually checked
+        GraphRegion closest = null;
+        int maxRing = (SEARCH_RADIUS - SEARCH_TILE_SIZE / 2 + SEARCH_TILE_SIZE - 1) / SEARCH_TILE_SIZE;
+        for (int ring = 0; ring <= maxRing && closest == null; ring++) {
+            for (int tileX = -ring; tileX <= ring; tileX++) {
+                for (int tileZ = -ring; tileZ <= ring; tileZ++) {
+                    if (Math.max(Math.abs(tileX), Math.abs(tileZ)) != ring) {
+                        continue;
                     }
-                    for (GraphRegion neighbour2 : neighbour.getNeighbors()) {
-                        if (isForestBiome(neighbour2, biomeModel)) {
-                            forest = true;
-                        }
-                        if (isDesertBiome(neighbour2, biomeModel)) {
-                            desert = true;
+                    BlockRegion tile = getSearchTile(desiredPos, tileX, tileZ, searchArea);
+                    org.terasology.engine.world.generation.Region worldRegion = getWorld().getWorldData(tile);
+                    LostMetrics.FACET_COLUMNS.add((long) tile.getSizeX() * tile.getSizeZ());
+                    GraphFacet graphs = worldRegion.getFacet(GraphFacet.class);
+                    WhittakerBiomeModelFacet model = worldRegion.getFacet(WhittakerBiomeModelFacet.class);
+                    for (Graph g : graphs.getAllGraphs()) {
+                        if (checkedGraphs.add(g)) {
+                            ringGraphs.add(g);
+                            ringModels.add(model.get(g));
                         }
                     }
                 }
-                if (ocean || !forest || !desert) {
-                    continue;
-                }
-                if (!biome.equals(WhittakerBiome.OCEAN) && !biome.equals(WhittakerBiome.LAKE) && !biome.equals(WhittakerBiome.BEACH)) {
-                    picker.offer(r.getCenter(), r);
-                    locationFound = true;
-                    break;
-                }
-            }
-            if (locationFound) {
-                break;
             }
+            addSpawnRegions(ringGraphs, ringModels, searchArea, candidates);
+            ringGraphs.clear();
+            ringModels.clear();
+            // graphs not checked yet lie entirely outside the rings checked so far, a candidate closer than that is
+            // the nearest one; after the last ring any candidate is
+            float uncheckedDistance = ring < maxRing ? (ring + 0.5f) * SEARCH_TILE_SIZE : Float.MAX_VALUE;
+            closest = candidates.findNearest(desiredPos.x(), desiredPos.z(), uncheckedDistance);
         }
+
         Vector2i target;
-        if (picker.getClosest() != null) {
-            Vector2fc hit = picker.getClosest().getCenter();
+        if (closest != null) {
+            Vector2fc hit = closest.getCenter();
             target = new Vector2i(hit.x(), hit.y(), RoundingMode.FLOOR);
         } else {
             target = new Vector2i(desiredPos.x(), desiredPos.z());
         }
 
         FixedSpawner spawner = new FixedSpawner(target.x(), target.y());
-        return spawner.getSpawnPosition(getWorld(), entity);
+        Vector3fc spawnPosition = spawner.getSpawnPosition(getWorld(), entity);
+        if (cache != null && spawnPosition != null) {
+            cache.putSpawnPosition(desiredPos.x(), desiredPos.z(), spawnPosition);
+        }
+        LostMetrics.SPAWN_POSITION.stop(start);
+        return spawnPosition;
+    }
+
+    /**
+     * Adds the suitable spawn regions of the given graphs to the index, in the order of the graphs. In parallel mode
+     * the graphs are checked concurrently, but the regions are still added in the same order.
+     */
+    private void addSpawnRegions(List<Graph> graphs, List<BiomeModel> models, BlockRegion searchArea,
+                                 NearestPointIndex<GraphRegion> candidates) {
+        IntStream indices = IntStream.range(0, graphs.size());
+        if (parallelSpawnSearch && graphs.size() > 1) {
+            indices = indices.parallel();
+        }
+        List<List<GraphRegion>> spawnRegions = indices
+                .mapToObj(i -> {
+                    List<GraphRegion> graphRegions = new ArrayList<>();
+                    SpawnRegionFinder.collectSpawnRegions(graphs.get(i), models.get(i), searchArea, graphRegions);
+                    return graphRegions;
+                })
+                .collect(Collectors.toList());
+        for (List<GraphRegion> graphRegions : spawnRegions) {
+            for (GraphRegion region : graphRegions) {
+                candidates.add(region.getCenter().x(), region.getCenter().y(), region);
+            }
+        }
+    }
+
+    /**
+     * Sets the cache spawn positions are looked up in before searching, and stored in after searching.
+     */
+    public void setWorldCache(LostWorldCache worldCache) {
+        this.worldCache = worldCache;
+    }
+
+    /**
+     * Returns the facet tiles shared by the {@link LevelSiteProvider} and the {@link LostWorldQueryService}, created on
+     * first use once the world exists. Sharing them lets world generation sample the elevations around level sites
+     * without generating a world region of its own, and runtime queries reuse the tiles generated for that.
+     */
+    public FacetTileCache getTileCache() {
+        FacetTileCache cache = tileCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = tileCache;
+                if (cache == null) {
+                    LostCacheConfigComponent config = cacheConfig != null ? cacheConfig
+                            : LostCacheConfigComponent.load();
+                    cache = new FacetTileCache(getWorld(), config.queryTiles, config.queryTileMemoryMb * (1L << 20));
+                    tileCache = cache;
+                }
+            }
+        }
+        return cache;
     }
 
-    private boolean isForestBiome(GraphRegion region, BiomeModel biomeModel) {
-        return biomeModel.getBiome(region).equals(WhittakerBiome.TROPICAL_SEASONAL_FOREST) || biomeModel.getBiome(region).equals(WhittakerBiome.TEMPERATE_RAIN_FOREST) || biomeModel.getBiome(region).equals(WhittakerBiome.TEMPERATE_DECIDUOUS_FOREST) || biomeModel.getBiome(region).equals(WhittakerBiome.TROPICAL_RAIN_FOREST);
+    /**
+     * Chooses whether the graphs of the spawn search are checked concurrently on the common fork/join pool or one
+     * after another. Both modes find the same spawn position. Read from the {@link LostCacheConfigComponent} when the
+     * world is created.
+     */
+    public void setParallelSpawnSearch(boolean parallelSpawnSearch) {
+        this.parallelSpawnSearch = parallelSpawnSearch;
     }
 
-    private boolean isDesertBiome(GraphRegion region, BiomeModel biomeModel) {
-        return biomeModel.getBiome(region).equals(WhittakerBiome.TEMPERATE_DESERT) || biomeModel.getBiome(region).equals(WhittakerBiome.SUBTROPICAL_DESERT);
+    /**
+     * Returns the tile of the spawn search at the given tile offset from the desired position, clipped to the
+     * search area.
+     */
+    private BlockRegion getSearchTile(Vector3ic desiredPos, int tileX, int tileZ, BlockRegion searchArea) {
+        int minX = desiredPos.x() + tileX * SEARCH_TILE_SIZE - SEARCH_TILE_SIZE / 2;
+        int minZ = desiredPos.z() + tileZ * SEARCH_TILE_SIZE - SEARCH_TILE_SIZE / 2;
+        return new BlockRegion(
+                Math.max(minX, searchArea.minX()), searchArea.minY(), Math.max(minZ, searchArea.minZ()),
+                Math.min(minX + SEARCH_TILE_SIZE - 1, searchArea.maxX()), searchArea.maxY(),
+                Math.min(minZ + SEARCH_TILE_SIZE - 1, searchArea.maxZ()));
     }
 }
@@ -0,0 +1,203 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3i;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.generation.Region;
+import org.terasology.engine.world.generation.facets.ElevationFacet;
+import org.terasology.engine.world.generation.facets.SurfacesFacet;
+import org.terasology.engine.world.generator.WorldGenerator;
+import org.terasology.lost.LostLevel;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.biome.WhittakerBiome;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphFacet;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Answers queries about the generated world (surface heights, voronoi regions, biomes and level sites) for the Lost
+ * systems. The facets are generated in tiles which are kept in a {@link FacetTileCache}, so queries close to each other
+ * share the generated data. In a Lost world the tiles are shared with world generation, see
+ * {@link LostWorldGenerator#getTileCache()}. All methods can be called from any thread.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(LostWorldQueryService.class)
+public class LostWorldQueryService extends BaseComponentSystem {
+    @In
+    private WorldGenerator worldGenerator;
+
+    private LostCacheConfigComponent cacheConfig;
+    private FacetTileCache tileCache;
+
+    @Override
+    public void postBegin() {
+        cacheConfig = LostCacheConfigComponent.load();
+        if (worldGenerator instanceof LostWorldGenerator) {
+            // shared with the level site provider, which samples the elevations around the sites
+            tileCache = ((LostWorldGenerator) worldGenerator).getTileCache();
+        } else {
+            tileCache = new FacetTileCache(worldGenerator.getWorld(), cacheConfig.queryTiles,
+                    cacheConfig.queryTileMemoryMb * (1L << 20));
+        }
+    }
+
+    @Command(shortDescription = "Prints the sizes and statistics of the Lost world caches", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostCacheStats() {
+        return String.format("query tiles: %d of %d cached (about %d MiB), %d hits, %d misses, %d evictions%n",
+                tileCache.size(), tileCache.getCapacity(), tileCache.size() * FacetTileCache.ESTIMATED_TILE_BYTES >> 20,
+                tileCache.getHits(), tileCache.getMisses(), tileCache.getEvictions())
+                + String.format("provider capacities (world regions): regions %d, graphs %d, water %d, elevation %d, "
+                        + "rivers %d, moisture %d, biomes %d",
+                cacheConfig.worldRegions, cacheConfig.graphs, cacheConfig.waterModels, cacheConfig.elevationModels,
+                cacheConfig.riverModels, cacheConfig.moistureModels, cacheConfig.biomeModels);
+    }
+
+    /**
+     * @return the height of the primary surface at the given column, or the elevation if there is none
+     */
+    public int getSurfaceHeight(int x, int z) {
+        FacetTileCache.Tile tile = tileCache.getTile(x, z);
+        SurfacesFacet surfacesFacet = tile.getSurfacesFacet();
+        ElevationFacet elevationFacet = tile.getElevationFacet();
+        return Math.round(surfacesFacet.getPrimarySurface(elevationFacet, x, z).orElse(elevationFacet.getWorld(x, z)));
+    }
+
+    /**
+     * Fills the surface heights of an area, as returned by {@link #getSurfaceHeight(int, int)}, row by row into an
+     * array of sizeX * sizeZ entries.
+     */
+    public int[] getSurfaceHeights(int minX, int minZ, int sizeX, int sizeZ) {
+        return tileCache.getSurfaceHeights(minX, minZ, sizeX, sizeZ);
+    }
+
+    /**
+     * Same as {@link #getSurfaceHeights(int, int, int, int)}, but uses the tiles only if they are cached already.
+     * Otherwise the facets are generated for the area itself rather than the tiles covering it, so a one-off query of a
+     * small area, e.g. the hut placement, doesn't generate up to four tiles on the calling thread.
+     */
+    public int[] getSurfaceHeightsOfArea(int minX, int minZ, int sizeX, int sizeZ) {
+        if (tileCache.containsArea(minX, minZ, sizeX, sizeZ)) {
+            return getSurfaceHeights(minX, minZ, sizeX, sizeZ);
+        }
+        // the same layers as the tiles, so that both return the same heights
+        BlockRegion area = new BlockRegion(minX, 0, minZ, minX + sizeX - 1, 2, minZ + sizeZ - 1);
+        Region region = worldGenerator.getWorld().getWorldData(area);
+        SurfacesFacet surfacesFacet = region.getFacet(SurfacesFacet.class);
+        ElevationFacet elevationFacet = region.getFacet(ElevationFacet.class);
+        int[] heights = new int[sizeX * sizeZ];
+        for (int z = 0; z < sizeZ; z++) {
+            for (int x = 0; x < sizeX; x++) {
+                float elevation = elevationFacet.getWorld(minX + x, minZ + z);
+                heights[z * sizeX + x] = Math.round(surfacesFacet.getPrimarySurface(elevationFacet, minX + x, minZ + z)
+                        .orElse(elevation));
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Fills the rounded elevations of an area row by row into an array of sizeX * sizeZ entries, the same elevations
+     * the {@link LevelSiteSelector} samples during world generation.
+     */
+    public int[] getElevations(int minX, int minZ, int sizeX, int sizeZ) {
+        return tileCache.getElevations(minX, minZ, sizeX, sizeZ);
+    }
+
+    /**
+     * @return the voronoi region containing the given column
+     */
+    public GraphRegion getRegion(int x, int z) {
+        return tileCache.getTile(x, z).getGraphFacet().getWorldTriangle(x, z).getRegion();
+    }
+
+    /**
+     * @return the biome of the voronoi region containing the given column
+     */
+    public WhittakerBiome getBiome(int x, int z) {
+        FacetTileCache.Tile tile = tileCache.getTile(x, z);
+        GraphFacet graphFacet = tile.getGraphFacet();
+        Graph graph = graphFacet.getWorldGraph(x, z);
+        GraphRegion region = graphFacet.getWorldTriangle(x, z).getRegion();
+        return tile.getBiomeModelFacet().get(graph).getBiome(region);
+    }
+
+    /**
+     * Returns the position of the site of the given level in the graph containing the given column, as chosen by the
+     * {@link LevelSitePlanner} during world generation.
+     *
+     * @return the origin of the level structure, null if the graph has no site for the level
+     */
+    public Vector3i getLevelSite(LostLevel level, int x, int z) {
+        FacetTileCache.Tile tile = tileCache.getTile(x, z);
+        Graph graph = tile.getGraphFacet().getWorldGraph(x, z);
+        BiomeModel biomeModel = tile.getBiomeModelFacet().get(graph);
+        LevelSitePlanner planner = LevelSitePlanner.of(graph, biomeModel);
+        return planner.getSitePosition(level, this::getElevations);
+    }
+
+    /**
+     * Returns the level sites whose structures may reach into the given columns. The sites are taken from the
+     * {@link LevelSitePlanner}s of the graphs in the tiles around the columns, so positions chosen before, e.g. during
+     * world generation, are reused, and no world data is generated for the area itself.
+     */
+    public List<LevelSiteFacet.Site> getLevelSites(int minX, int minZ, int maxX, int maxZ) {
+        int reach = LevelSiteProvider.REACH;
+        Set<Graph> graphs = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<LevelSiteFacet.Site> sites = new ArrayList<>();
+        int size = FacetTileCache.TILE_SIZE;
+        for (int tileZ = Math.floorDiv(minZ - reach, size) * size; tileZ <= maxZ + reach; tileZ += size) {
+            for (int tileX = Math.floorDiv(minX - reach, size) * size; tileX <= maxX + reach; tileX += size) {
+                FacetTileCache.Tile tile = tileCache.getTile(tileX, tileZ);
+                for (Graph graph : tile.getGraphFacet().getAllGraphs()) {
+                    if (graphs.add(graph)) {
+                        addLevelSites(LevelSitePlanner.of(graph, tile.getBiomeModelFacet().get(graph)), minX, minZ,
+                                maxX, maxZ, sites);
+                    }
+                }
+            }
+        }
+        return sites;
+    }
+
+    private void addLevelSites(LevelSitePlanner planner, int minX, int minZ, int maxX, int maxZ,
+                               List<LevelSiteFacet.Site> sites) {
+        int reach = LevelSiteProvider.REACH;
+        int extent = LevelSiteProvider.MAX_EXTENT;
+        for (LostLevel level : LostLevel.values()) {
+            GraphRegion site = planner.getSite(level);
+            if (site == null) {
+                continue;
+            }
+            // the position of a site is only chosen, which samples its elevations, if its structure may be in reach
+            int centerX = Math.round(site.getCenter().x());
+            int centerZ = Math.round(site.getCenter().y());
+            if (centerX < minX - reach || centerX > maxX + reach || centerZ < minZ - reach || centerZ > maxZ + reach) {
+                continue;
+            }
+            Vector3i position = planner.getSitePosition(level, this::getElevations);
+            if (position.x + extent >= minX && position.x - extent <= maxX
+                    && position.z + extent >= minZ && position.z - extent <= maxZ) {
+                sites.add(new LevelSiteFacet.Site(level, position));
+            }
+        }
+    }
+
+    public FacetTileCache getTileCache() {
+        return tileCache;
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2i;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Points in the horizontal plane, bucketed in a grid of square cells, which answers nearest point queries by visiting
+ * the cells in rings around the query position. Only the rings which may hold a point closer than the best one found so
+ * far are visited. Among points at the same distance the one visited first wins, so results only depend on the points
+ * and the order they were added in. This class is not thread safe.
+ *
+ * @param <T> the values stored with the points
+ */
+public class NearestPointIndex<T> {
+    private final int cellSize;
+    private final Map<Vector2i, List<Entry<T>>> cells = new HashMap<>();
+    // the cells holding points lie within these bounds
+    private int minCellX = Integer.MAX_VALUE;
+    private int minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE;
+    private int maxCellZ = Integer.MIN_VALUE;
+    private int size;
+
+    public NearestPointIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void add(float x, float z, T value) {
+        int cellX = Math.floorDiv((int) Math.floor(x), cellSize);
+        int cellZ = Math.floorDiv((int) Math.floor(z), cellSize);
+        cells.computeIfAbsent(new Vector2i(cellX, cellZ), key -> new ArrayList<>()).add(new Entry<>(x, z, value));
+        minCellX = Math.min(minCellX, cellX);
+        minCellZ = Math.min(minCellZ, cellZ);
+        maxCellX = Math.max(maxCellX, cellX);
+        maxCellZ = Math.max(maxCellZ, cellZ);
+        size++;
+    }
+
+    /**
+     * Returns the value of the point closest to the given position, if it is within the given distance.
+     *
+     * @return the value or null if there is no point within the distance
+     */
+    public T findNearest(float x, float z, float maxDistance) {
+        if (size == 0) {
+            return null;
+        }
+        int centerX = Math.floorDiv((int) Math.floor(x), cellSize);
+        int centerZ = Math.floorDiv((int) Math.floor(z), cellSize);
+        int maxRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX),
+                Math.max(centerZ - minCellZ, maxCellZ - centerZ));
+        T closest = null;
+        float closestDistance = maxDistance * maxDistance;
+        Vector2i cell = new Vector2i();
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // all points in this ring and beyond are at least this far away
+            float ringDistance = Math.max(0, ring - 1) * (float) cellSize;
+            if (ringDistance * ringDistance > closestDistance) {
+                break;
+            }
+            for (int cellX = centerX - ring; cellX <= centerX + ring; cellX++) {
+                for (int cellZ = centerZ - ring; cellZ <= centerZ + ring; cellZ++) {
+                    if (Math.max(Math.abs(cellX - centerX), Math.abs(cellZ - centerZ)) != ring) {
+                        continue;
+                    }
+                    List<Entry<T>> entries = cells.get(cell.set(cellX, cellZ));
+                    if (entries == null) {
+                        continue;
+                    }
+                    for (Entry<T> entry : entries) {
+                        float dx = entry.x - x;
+                        float dz = entry.z - z;
+                        float distance = dx * dx + dz * dz;
+                        if (distance < closestDistance || distance == closestDistance && closest == null) {
+                            closestDistance = distance;
+                            closest = entry.value;
+                        }
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return the number of points added
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Entry<T> {
+        private final float x;
+        private final float z;
+        private final T value;
+
+        private Entry(float x, float z, T value) {
+            this.x = x;
+            this.z = z;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2fc;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.lost.LostLevel;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the voronoi regions of a {@link Graph} which are suitable as a spawn point. Only depends on the graph and its
+ * {@link BiomeModel}, not on a generated world. Regions holding a level site, and their neighbours, are never chosen,
+ * so that the player doesn't spawn inside or right next to a generated structure.
+ */
+public final class SpawnRegionFinder {
+    // Biomes the spawn point must not be in
+    private static final int SPAWN_EXCLUDED = BiomeNeighborhood.OCEAN | BiomeNeighborhood.LAKE | BiomeNeighborhood.BEACH;
+    // Biomes that are required close to the spawn point
+    private static final int SPAWN_REQUIRED_NEARBY = BiomeNeighborhood.FOREST | BiomeNeighborhood.DESERT;
+
+    private SpawnRegionFinder() {
+    }
+
+    /**
+     * Adds every region of the graph which is suitable as a spawn point and lies within the search area to the given
+     * list, in the order of {@link Graph#getRegions()}.
+     */
+    public static void collectSpawnRegions(Graph g, BiomeModel biomeModel, BlockRegion searchArea,
+                                           List<GraphRegion> spawnRegions) {
+        BiomeNeighborhood neighborhood = BiomeNeighborhood.of(g, biomeModel);
+        Set<GraphRegion> levelSites = getLevelSiteSurroundings(LevelSitePlanner.of(g, biomeModel));
+        List<GraphRegion> regions = g.getRegions();
+        for (int i = 0; i < regions.size(); i++) {
+            Vector2fc center = regions.get(i).getCenter();
+            if (center.x() < searchArea.minX() || center.x() > searchArea.maxX()
+                    || center.y() < searchArea.minZ() || center.y() > searchArea.maxZ()) {
+                continue;
+            }
+            if (isSpawnRegion(neighborhood, i) && !levelSites.contains(regions.get(i))) {
+                spawnRegions.add(regions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a region is a suitable spawn point, i.e. it is not water and has both forest and desert
+     * biomes within two hops, but no ocean right next to it.
+     *
+     * @param index the index of the region in {@link Graph#getRegions()}
+     */
+    public static boolean isSpawnRegion(BiomeNeighborhood neighborhood, int index) {
+        return (neighborhood.getCategories(index) & SPAWN_EXCLUDED) == 0
+                && (neighborhood.getAdjacent(index) & BiomeNeighborhood.OCEAN) == 0
+                && (neighborhood.getNearby(index) & SPAWN_REQUIRED_NEARBY) == SPAWN_REQUIRED_NEARBY;
+    }
+
+    /**
+     * @return the regions holding a level site and their neighbours
+     */
+    static Set<GraphRegion> getLevelSiteSurroundings(LevelSitePlanner planner) {
+        Set<GraphRegion> surroundings = new HashSet<>();
+        for (LostLevel level : LostLevel.values()) {
+            GraphRegion site = planner.getSite(level);
+            if (site != null) {
+                surroundings.add(site);
+                site.getNeighbors().forEach(surroundings::add);
+            }
+        }
+        return surroundings;
+    }
+}
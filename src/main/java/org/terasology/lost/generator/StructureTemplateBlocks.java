@@ -0,0 +1,133 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.structureTemplates.components.SpawnBlockRegionsComponent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The blocks of the {@link SpawnBlockRegionsComponent} of a structure template, flattened into one entry per
+ * position. Where regions overlap the block of the later region is kept, just as if the regions were placed one after
+ * another. Positions are relative to the origin the template is spawned at, without rotation.
+ * <p>
+ * The blocks of a prefab are parsed once and shared by world generation and the runtime systems, see
+ * {@link #of(Prefab)}. They are parsed again once the prefab has been reloaded, which is detected by the prefab holding
+ * another {@link SpawnBlockRegionsComponent} than the one parsed.
+ */
+public final class StructureTemplateBlocks {
+    // the parsed templates by prefab URI, used from the chunk generation threads as well
+    private static final Map<String, StructureTemplateBlocks> CACHE = new ConcurrentHashMap<>();
+    private static final StructureTemplateBlocks EMPTY = new StructureTemplateBlocks(null, new LinkedHashMap<>());
+
+    // the positions as consecutive x, y, z triples
+    private final int[] positions;
+    // the block at each position
+    private final Block[] blocks;
+    private final BlockRegion bounds;
+    // the component the blocks were parsed from, null if they weren't parsed from a prefab
+    private final SpawnBlockRegionsComponent source;
+
+    private StructureTemplateBlocks(SpawnBlockRegionsComponent source, Map<Vector3ic, Block> blockMap) {
+        this.source = source;
+        positions = new int[blockMap.size() * 3];
+        blocks = new Block[blockMap.size()];
+        BlockRegion region = null;
+        int i = 0;
+        for (Map.Entry<Vector3ic, Block> entry : blockMap.entrySet()) {
+            Vector3ic position = entry.getKey();
+            positions[i * 3] = position.x();
+            positions[i * 3 + 1] = position.y();
+            positions[i * 3 + 2] = position.z();
+            blocks[i] = entry.getValue();
+            region = region == null ? new BlockRegion(position) : region.union(position);
+            i++;
+        }
+        bounds = region != null ? region : new BlockRegion(0, 0, 0);
+    }
+
+    /**
+     * Returns the (cached) blocks of the given structure template prefab.
+     */
+    public static StructureTemplateBlocks of(Prefab prefab) {
+        SpawnBlockRegionsComponent spawnBlockRegions = prefab.getComponent(SpawnBlockRegionsComponent.class);
+        String uri = prefab.getUrn().toString();
+        StructureTemplateBlocks cached = CACHE.get(uri);
+        if (cached == null || cached.source != spawnBlockRegions) {
+            // parsing twice by concurrent callers is harmless, both get the same blocks
+            cached = of(spawnBlockRegions);
+            CACHE.put(uri, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Returns the (cached) blocks of the structure template prefab with the given URI.
+     *
+     * @return the blocks, none if there is no such prefab
+     */
+    public static StructureTemplateBlocks of(String templateURI) {
+        return Assets.getPrefab(templateURI).map(StructureTemplateBlocks::of).orElse(EMPTY);
+    }
+
+    /**
+     * Parses the given component without caching the result.
+     */
+    public static StructureTemplateBlocks of(SpawnBlockRegionsComponent spawnBlockRegions) {
+        Map<Vector3ic, Block> blockMap = new LinkedHashMap<>();
+        if (spawnBlockRegions != null) {
+            for (SpawnBlockRegionsComponent.RegionToFill regionToFill : spawnBlockRegions.regionsToFill) {
+                for (Vector3ic position : regionToFill.region) {
+                    // removed first, so that the entry moves to the end just like the region overwriting it
+                    Vector3i key = new Vector3i(position);
+                    blockMap.remove(key);
+                    blockMap.put(key, regionToFill.blockType);
+                }
+            }
+        }
+        return new StructureTemplateBlocks(spawnBlockRegions, blockMap);
+    }
+
+    public int size() {
+        return blocks.length;
+    }
+
+    public int getX(int index) {
+        return positions[index * 3];
+    }
+
+    public int getY(int index) {
+        return positions[index * 3 + 1];
+    }
+
+    public int getZ(int index) {
+        return positions[index * 3 + 2];
+    }
+
+    public Block getBlock(int index) {
+        return blocks[index];
+    }
+
+    /**
+     * @return an estimate of the heap used by the block list, in bytes
+     */
+    public long getMemoryFootprint() {
+        // object headers, the position triples, one reference per block and the bounds
+        return 16 + (16 + 12L * blocks.length) + (16 + 4L * blocks.length) + 48;
+    }
+
+    /**
+     * @return the smallest region containing all blocks, relative to the origin
+     */
+    public BlockRegion getBounds() {
+        return new BlockRegion(bounds);
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+/**
+ * Prefix sums of the surface heights and squared surface heights of a rectangular area, which give the mean and
+ * variance of the heights of any axis aligned rectangle within the area in constant time. A low variance means the
+ * rectangle is flat.
+ * <p>
+ * Positions are relative to the minimum corner of the area; the heights are given row by row, as returned by
+ * {@link LostWorldQueryService#getSurfaceHeights(int, int, int, int)}.
+ */
+public final class SummedAreaHeights {
+    private final int sizeX;
+    private final int sizeZ;
+    // sum of all heights with a smaller x and z, at index z * (sizeX + 1) + x
+    private final long[] sums;
+    private final long[] squareSums;
+
+    public SummedAreaHeights(int[] heights, int sizeX, int sizeZ) {
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        int stride = sizeX + 1;
+        sums = new long[stride * (sizeZ + 1)];
+        squareSums = new long[sums.length];
+        for (int z = 0; z < sizeZ; z++) {
+            long rowSum = 0;
+            long rowSquareSum = 0;
+            for (int x = 0; x < sizeX; x++) {
+                long height = heights[z * sizeX + x];
+                rowSum += height;
+                rowSquareSum += height * height;
+                sums[(z + 1) * stride + x + 1] = sums[z * stride + x + 1] + rowSum;
+                squareSums[(z + 1) * stride + x + 1] = squareSums[z * stride + x + 1] + rowSquareSum;
+            }
+        }
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    /**
+     * @return the sum of the heights of the given rectangle
+     */
+    public long getSum(int minX, int minZ, int width, int depth) {
+        return rectangle(sums, minX, minZ, width, depth);
+    }
+
+    /**
+     * @return the mean height of the given rectangle
+     */
+    public double getMean(int minX, int minZ, int width, int depth) {
+        return (double) getSum(minX, minZ, width, depth) / ((long) width * depth);
+    }
+
+    /**
+     * @return the variance of the heights of the given rectangle, 0 if it is flat
+     */
+    public double getVariance(int minX, int minZ, int width, int depth) {
+        long count = (long) width * depth;
+        double mean = (double) getSum(minX, minZ, width, depth) / count;
+        double meanOfSquares = (double) rectangle(squareSums, minX, minZ, width, depth) / count;
+        return Math.max(0, meanOfSquares - mean * mean);
+    }
+
+    private long rectangle(long[] table, int minX, int minZ, int width, int depth) {
+        int stride = sizeX + 1;
+        int maxX = minX + width;
+        int maxZ = minZ + depth;
+        return table[maxZ * stride + maxX] - table[minZ * stride + maxX] - table[maxZ * stride + minX]
+                + table[minZ * stride + minX];
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.lost.journal;
+
+import com.google.common.collect.Lists;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text of an entry of the Lost journal chapter, defined in the prefabs in {@code prefabs/journal}. Paragraphs may
+ * use the markup of the HTML-like parser of the journal browser.
+ */
+public class LostJournalEntryComponent implements Component<LostJournalEntryComponent> {
+    public String title;
+    public List<String> paragraphs = new ArrayList<>();
+
+    @Override
+    public void copyFrom(LostJournalEntryComponent other) {
+        this.title = other.title;
+        this.paragraphs = Lists.newArrayList(other.paragraphs);
+    }
+}
@@ -38,13 +38,16 @@ import org.terasology.journal.DiscoveredNewJournalEntry;
 import org.terasology.journal.JournalAccessComponent;
 import org.terasology.journal.JournalEntryProducer;
 import org.terasology.journal.JournalManager;
-import org.terasology.journal.TimestampResolver;
+import org.terasology.lost.journal.LostJournalEntryComponent;
 import org.terasology.module.inventory.events.InventorySlotChangedEvent;
 import org.terasology.nui.HorizontalAlign;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class LostJournalIntegration extends BaseComponentSystem {
@@ -57,6 +60,19 @@ public class LostJournalIntegration extends BaseComponentSystem {
     private BlockManager blockManager;
     private String lostChapterId = "Lost";
 
+    // journal entry ids and the prefabs holding their text, in the order of the chapter
+    private static final Map<String, String> ENTRIES = new LinkedHashMap<>();
+
+    static {
+        ENTRIES.put("Exploration Log #111", "Lost:explorationLog111");
+        ENTRIES.put("Exploration Log #112", "Lost:explorationLog112");
+        ENTRIES.put("Exploration Log #113", "Lost:explorationLog113");
+        ENTRIES.put("Exploration Log- The Circle Of Life", "Lost:theCircleOfLife");
+        ENTRIES.put("Exploration Log- Shattered Temple of Hope", "Lost:shatteredTempleOfHope");
+        ENTRIES.put("Exploration Log- The Hunt for Truth", "Lost:theHuntForTruth");
+        ENTRIES.put("Exploration Log #114", "Lost:explorationLog114");
+    }
+
     private ParagraphRenderStyle centerRenderStyle = new ParagraphRenderStyle() {
         @Override
         public HorizontalAlign getHorizontalAlignment() {
@@ -69,108 +85,10 @@ public class LostJournalIntegration extends BaseComponentSystem {
 
         BrowserJournalChapterHandler chapterHandler = new BrowserJournalChapterHandler();
 
-        chapterHandler.registerJournalEntry("Exploration Log #111",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log #111"),
-                        createTextParagraph("Survey of Epsilon Draconis system is now complete. The system is concluded to be inhabitable " +
-                                "after seven months of relentless exploration. However, planet 7: Scorpion Chapel, scouted by Ranger 729 is " +
-                                "confirmed to possess huge amounts of metal ores and methane. The planet can be scavenged for resources but is " +
-                                "still incapable for supporting life akin to other planets in the system."),
-                        createTextParagraph("Iota Lateralus, a binary star planetary system, distant 3006 light years from Narvij, " +
-                                "appears promising. Survey is about to begin in two days. Inspection of circumbinary planet 4 of the" +
-                                " system- Rosseta Parabole, has been assigned to me. Mode of travel would be a regular triodal wormhole. " +
-                                "Duration should be less than a month. Glad to be back scouting!<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log #112",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log #112"),
-                        createTextParagraph("After five hours of trying to establish communication with base back at Narvij and nearby space " +
-                                "stations, I’ve given up. The solar flares from Proxima Lateralus seem to have some sort of interference with" +
-                                " the signals. The situation seems grim, my Antrum Sabre, which I used to create the wormhole, is now dysfunctional." +
-                                " I believe it was impacted in the journey. With the wormhole creator destroyed, I have no way to go back home."),
-                        createTextParagraph("The planet seems promising, as of yet. There is no sign of intelligent life. I do see some alien " +
-                                "lifeform alike some of the animals back home. I should find some way to ensure survival. This might just be " +
-                                "the last planet I set foot on.<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log #112",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log #112"),
-                        createTextParagraph("After five hours of trying to establish communication with base back at Narvij and nearby space " +
-                                "stations, I’ve given up. The solar flares from Proxima Lateralus seem to have some sort of interference with" +
-                                " the signals. The situation seems grim, my Antrum Sabre, which I used to create the wormhole, is now dysfunctional." +
-                                " I believe it was impacted in the journey. With the wormhole creator destroyed, I have no way to go back home."),
-                        createTextParagraph("The planet seems promising, as of yet. There is no sign of intelligent life. I do see some alien " +
-                                "lifeform alike some of the animals back home. I should find some way to ensure survival. This might just be " +
-                                "the last planet I set foot on.<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log #113",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log #113"),
-                        createTextParagraph("I am certain of the fact that this planet was once home to intelligent life forms. There are clear " +
-                                "signs. In front of a beautifully crafted hut was a well. Deep inside the well hidden in the water, was a treasure chest. " +
-                                "Inside the chest, I’ve found what looks like a book of secrets.<l><l>" +
-                                "It talks about a treasure, possibly one that can take me out of this planet. " +
-                                "There are three parts that the treasure is made of. " +
-                                "The three elements of the treasure lie in the other three areas." +
-                                "<l><l>" +
-                                "The clues are indeed difficult to decipher. However, I should hurry and look for whatever is it that I can find. " +
-                                "This might be my only chance to make it back.<l><l>" +
-                                "This would be a ground-breaking discovery back in the HQ. The search has finally yielded results. Is this " +
-                                "civilization more advanced than ours? Why don’t I see anyone around? Did they get wiped out? Was it a natural " +
-                                "calamity or did they bring a catastrophe onto themselves?<l><l>" +
-                                "Why do they refer to the treasure as one that would bring misery? Is the treasure the reason for the collapse " +
-                                "of the early civilization that existed here?<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log- The Circle Of Life",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log- The Circle Of Life"),
-                        createTextParagraph("The structure was gigantic and mammoth in size. A large stonehenge, so big that it’s " +
-                                "construction is unfathomable. Inside the circle made by the huge pillars of stone lay a fortified room.<l><l>" +
-                                "The intelligent life-form is far too advanced than I imagined. Placed away from the reach of any unintelligent " +
-                                "creatures was another treasure chest. The whole room was locked by a door that had the password 18- " +
-                                "the number of pillars in the stonehenge. Separated from the door by an intricately " +
-                                "arranged system of rotating platforms that had lava underneath. " +
-                                "Mistime a jump and you’re cooked meat. The treasure chest possessed the key- an Arkenstone. Along with the " +
-                                "artifact, was also another book. The book says that this small stone is the most integral part of the Portal.<l><l>" +
-                                "I’m starting to believe that the whole idea might actually be true. That the early civilization did have a " +
-                                "piece of witchcraft and wizardry that allowed them to stitch a hole in the fabric of space and time.<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log- Shattered Temple of Hope",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log- Shattered Temple of Hope"),
-                        createTextParagraph("The tea was actually the letter T. Amidst the lush green forest lay a T shaped entrance made of " +
-                                "brown dirt, to a solemn temple. The password to the door was a reference to the brown dirt.<l><l>" +
-                                "My awe for the level of advancement that the inhabitants of this planet had reached, " +
-                                "has attained a new high. The tunnel led to a temple that possessed another chest at its end. " +
-                                "The path to the treasure was however blocked by a series of fireball launchers and swinging blades. " +
-                                "The treasure chest consisted of Shattered Plasma the element for the construction of the foundation of the portal.<l><l>" +
-                                "I wonder how the portal might actually work. Would it be like my Antrum Sabre that became dysfunctional?<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log- The Hunt for Truth",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log- The Hunt for Truth"),
-                        createTextParagraph("A Pyramid! Looks the same from all four sides. The answer was 42- " +
-                                "one less than the number of blocks that make one side of the pyramid.<l><l>" +
-                                "The structure was huge, and constructed with delicate and trained expertise. The " +
-                                "civilization that lived here did know a lot. One side of the pyramid had a door that " +
-                                "let to a room that had another treasure chest. This treasure chest was protected by a " +
-                                "series of swinging blades that blocked the way.<l><l>" +
-                                "Made with such precision, that the seeker would need to time the sprint perfectly in order " +
-                                "to reach the other side. Moreover, the return was more difficult than the approach.<l><l>" +
-                                "The treasure consisted of the Facade of Truth, one of the three elements of the portal and instructions on how to use it.<l><l>")
-                ));
-
-        chapterHandler.registerJournalEntry("Exploration Log #114",
-                Arrays.asList(
-                        createTitleParagraph("Exploration Log #114"),
-                        createTextParagraph("All the items for the portal have been found. Only thing that remains is to put everything together, and fire it up.<l><l>")
-                ));
+        // the text is only loaded from the prefab once the entry is opened
+        for (Map.Entry<String, String> entry : ENTRIES.entrySet()) {
+            chapterHandler.registerJournalEntry(entry.getKey(), new LazyEntryProducer(entry.getValue()));
+        }
 
         journalManager.registerJournalChapter(lostChapterId,
                 Assets.getTextureRegion("Lost:journalIcons#WoodAndStone").get(),
@@ -178,18 +96,6 @@ public class LostJournalIntegration extends BaseComponentSystem {
         logger.info("registered journal chapter");
     }
 
-    private JournalEntryProducer createTimestampEntryProducer(String text) {
-        return new JournalEntryProducer() {
-            @Override
-            public Collection<ParagraphData> produceParagraph(long date) {
-                return Arrays.asList(
-                        HTMLLikeParser.parseHTMLLikeParagraph(centerRenderStyle, TimestampResolver.getJournalEntryDate(date)),
-                        HTMLLikeParser.parseHTMLLikeParagraph(null,
-                                text));
-            }
-        };
-    }
-
     private ParagraphData createTextParagraph(String text) {
         return HTMLLikeParser.parseHTMLLikeParagraph(null, text);
     }
@@ -243,4 +149,41 @@ public class LostJournalIntegration extends BaseComponentSystem {
             }
         }
     }
+
+    /**
+     * Produces the paragraphs of an entry from its prefab. The prefab is loaded and parsed when the entry is first
+     * shown, the paragraphs are kept for later views.
+     */
+    private final class LazyEntryProducer implements JournalEntryProducer {
+        private final String prefabUri;
+        private List<ParagraphData> paragraphs;
+
+        private LazyEntryProducer(String prefabUri) {
+            this.prefabUri = prefabUri;
+        }
+
+        @Override
+        public Collection<ParagraphData> produceParagraph(long date) {
+            if (paragraphs == null) {
+                paragraphs = parseParagraphs();
+            }
+            return paragraphs;
+        }
+
+        private List<ParagraphData> parseParagraphs() {
+            LostJournalEntryComponent entry = Assets.getPrefab(prefabUri)
+                    .map(prefab -> prefab.getComponent(LostJournalEntryComponent.class))
+                    .orElse(null);
+            if (entry == null) {
+                logger.error("Journal entry prefab {} not found", prefabUri);
+                return Collections.emptyList();
+            }
+            List<ParagraphData> result = new ArrayList<>(entry.paragraphs.size() + 1);
+            result.add(createTitleParagraph(entry.title));
+            for (String paragraph : entry.paragraphs) {
+                result.add(createTextParagraph(paragraph));
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
 }
@@ -0,0 +1,249 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.metrics;
+
+import org.joml.Vector3f;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.biomesAPI.OnBiomeChangedEvent;
+import org.terasology.engine.entitySystem.entity.EntityBuilder;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.logic.players.event.OnPlayerSpawnedEvent;
+import org.terasology.engine.registry.In;
+import org.terasology.lost.generator.LostWorldQueryService;
+import org.terasology.module.inventory.components.InventoryComponent;
+import org.terasology.polyworld.biome.WhittakerBiome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how the server time of the Lost systems scales with the number of players, without any clients. Simulated
+ * players are spawned through {@link OnPlayerSpawnedEvent} and walk straight ahead, firing
+ * {@link OnBiomeChangedEvent}s whenever they cross a biome border. The time spent in the Lost systems is recorded per
+ * tick: the event handlers of {@link org.terasology.lost.OnSpawnSystem} and
+ * {@link org.terasology.lost.LevelSpawnSystem} as well as the updates of the level spawn system and the structure
+ * spawn scheduler.
+ * <p>
+ * The simulated players are not persisted and carry a {@link SimulatedPlayerComponent}. The Lost systems run the same
+ * lookups for them as for real players, but don't give them items, place their huts, stage the level sites they find
+ * or cache their positions, so the world is left as it was. The biome lookups which drive the simulated movement are
+ * timed separately, as real players get their biome changes from the Biomes API. Metrics are switched on for the
+ * duration of the simulation and back to their previous setting afterwards.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class LostLoadSimulationSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+    private static final Logger logger = LoggerFactory.getLogger(LostLoadSimulationSystem.class);
+
+    // blocks per second, much faster than walking so that players cross many biome borders in a short run
+    private static final float SPEED = 32;
+    // the players start within this distance of the world origin
+    private static final int SPAWN_RANGE = 2000;
+    private static final int INVENTORY_SLOTS = 40;
+
+    @In
+    private EntityManager entityManager;
+    @In
+    private LostWorldQueryService worldQueryService;
+
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private final Random random = new Random(0);
+    private final StringBuilder report = new StringBuilder();
+    private LatencyHistogram tickTime;
+    // time spent looking up the biomes of the simulated players, per tick
+    private LatencyHistogram biomeTime;
+    // whether metrics were enabled before the simulation started
+    private boolean metricsWereEnabled;
+    private boolean running;
+    private int[] steps = new int[0];
+    private int step;
+    private int ticksPerStep;
+    private int ticksLeft;
+    // sum of the totals of the update timers at the end of the previous tick
+    private long previousUpdateTotal;
+    // time spent in the spawn events of the players added for the current step
+    private long spawnTime;
+
+    @Command(shortDescription = "Simulates players walking through the world and reports the Lost tick time",
+            helpText = "Runs one step per player count, e.g. \"1,10,50\", for the given number of ticks each",
+            runOnServer = true, requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostSimulate(@CommandParam("playerCounts") String playerCounts,
+                               @CommandParam("ticksPerStep") int ticks) {
+        if (running) {
+            return "A simulation is running already";
+        }
+        try {
+            steps = Arrays.stream(playerCounts.split(",")).map(String::trim).filter(count -> !count.isEmpty())
+                    .mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            return "Player counts must be a comma separated list of numbers";
+        }
+        if (steps.length == 0 || ticks <= 0) {
+            return "Nothing to simulate";
+        }
+        metricsWereEnabled = LostMetrics.isEnabled();
+        LostMetrics.setEnabled(true);
+        running = true;
+        report.setLength(0);
+        report.append(String.format("%8s %8s %9s %9s %9s %9s %11s %11s%n", "players", "ticks", "mean", "p50", "p99",
+                "max", "biome mean", "biome p99"));
+        ticksPerStep = ticks;
+        step = -1;
+        startStep();
+        return "Simulation started, see lostSimulationReport";
+    }
+
+    @Command(shortDescription = "Prints the results of the last load simulation, times in milliseconds per tick",
+            runOnServer = true, requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostSimulationReport() {
+        String progress = running ? String.format("running step %d of %d%n", step + 1, steps.length) : "";
+        return progress + report;
+    }
+
+    @Override
+    public void update(float delta) {
+        if (!running) {
+            return;
+        }
+        // players spawned for this step are counted in its first tick
+        long eventTime = spawnTime;
+        spawnTime = 0;
+        long lookupTime = 0;
+        for (SimulatedPlayer player : players) {
+            eventTime += player.walk(delta);
+            lookupTime += player.lookupTime;
+        }
+        biomeTime.record(lookupTime);
+        // the update timers include the work queued by the events of the previous tick
+        long updateTotal = getUpdateTotal();
+        tickTime.record(eventTime + updateTotal - previousUpdateTotal);
+        previousUpdateTotal = updateTotal;
+
+        if (--ticksLeft == 0) {
+            finishStep();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (running) {
+            stop();
+        }
+    }
+
+    private void startStep() {
+        step++;
+        tickTime = new LatencyHistogram("simulated tick");
+        biomeTime = new LatencyHistogram("simulated biome lookups");
+        previousUpdateTotal = getUpdateTotal();
+        while (players.size() < steps[step]) {
+            players.add(spawnPlayer());
+        }
+        ticksLeft = ticksPerStep;
+    }
+
+    private void finishStep() {
+        report.append(String.format("%8d %8d %9.3f %9.3f %9.3f %9.3f %11.3f %11.3f%n", players.size(),
+                tickTime.getCount(), tickTime.getMean() / 1e6, tickTime.getPercentile(50) / 1e6,
+                tickTime.getPercentile(99) / 1e6, tickTime.getMax() / 1e6, biomeTime.getMean() / 1e6,
+                biomeTime.getPercentile(99) / 1e6));
+        if (step + 1 < steps.length) {
+            startStep();
+        } else {
+            stop();
+            logger.info("Lost load simulation finished\n{}", report);
+        }
+    }
+
+    private SimulatedPlayer spawnPlayer() {
+        Vector3f position = new Vector3f(random.nextInt(2 * SPAWN_RANGE) - SPAWN_RANGE, 0,
+                random.nextInt(2 * SPAWN_RANGE) - SPAWN_RANGE);
+        position.y = worldQueryService.getSurfaceHeight((int) position.x, (int) position.z) + 1;
+        EntityBuilder builder = entityManager.newBuilder();
+        builder.setPersistent(false);
+        builder.addComponent(new LocationComponent(position));
+        builder.addComponent(new InventoryComponent(INVENTORY_SLOTS));
+        builder.addComponent(new SimulatedPlayerComponent());
+        EntityRef entity = builder.build();
+
+        double heading = random.nextDouble() * 2 * Math.PI;
+        SimulatedPlayer player = new SimulatedPlayer(entity, (float) Math.cos(heading), (float) Math.sin(heading));
+        long start = System.nanoTime();
+        entity.send(new OnPlayerSpawnedEvent());
+        spawnTime += System.nanoTime() - start;
+        return player;
+    }
+
+    private void stop() {
+        for (SimulatedPlayer player : players) {
+            player.entity.destroy();
+        }
+        players.clear();
+        ticksLeft = 0;
+        running = false;
+        LostMetrics.setEnabled(metricsWereEnabled);
+    }
+
+    private static long getUpdateTotal() {
+        return LostMetrics.LEVEL_SPAWN_TICK.getTotal() + LostMetrics.STRUCTURE_SPAWN_TICK.getTotal();
+    }
+
+    private final class SimulatedPlayer {
+        private final EntityRef entity;
+        private final float directionX;
+        private final float directionZ;
+        private WhittakerBiome biome;
+        // time spent looking up the biome in the last call of walk, in nanoseconds
+        private long lookupTime;
+
+        SimulatedPlayer(EntityRef entity, float directionX, float directionZ) {
+            this.entity = entity;
+            this.directionX = directionX;
+            this.directionZ = directionZ;
+            Vector3f position = entity.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
+            this.biome = lookUpBiome(position);
+        }
+
+        /**
+         * Moves the player on and fires a biome change if it entered another biome.
+         *
+         * @return the time spent in the event handlers, in nanoseconds
+         */
+        long walk(float delta) {
+            LocationComponent location = entity.getComponent(LocationComponent.class);
+            Vector3f position = location.getWorldPosition(new Vector3f());
+            position.add(directionX * SPEED * delta, 0, directionZ * SPEED * delta);
+            location.setWorldPosition(position);
+            entity.saveComponent(location);
+
+            WhittakerBiome newBiome = lookUpBiome(position);
+            if (newBiome == biome) {
+                return 0;
+            }
+            WhittakerBiome oldBiome = biome;
+            biome = newBiome;
+            long start = System.nanoTime();
+            entity.send(new OnBiomeChangedEvent(oldBiome, newBiome));
+            return System.nanoTime() - start;
+        }
+
+        private WhittakerBiome lookUpBiome(Vector3f position) {
+            long start = System.nanoTime();
+            WhittakerBiome found = worldQueryService.getBiome((int) position.x, (int) position.z);
+            lookupTime = System.nanoTime() - start;
+            LostMetrics.SIMULATED_BIOME_LOOKUP.record(lookupTime);
+            return found;
+        }
+    }
+}
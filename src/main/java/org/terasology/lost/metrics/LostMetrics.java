@@ -0,0 +1,99 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timings and counters of the Lost systems. Metrics are disabled by default, which reduces recording to a check of a
+ * flag. Typical use:
+ * <pre>
+ * long start = LostMetrics.start();
+ * ...
+ * LostMetrics.SPAWN_POSITION.stop(start);
+ * </pre>
+ */
+public final class LostMetrics {
+    private static final List<LatencyHistogram> TIMERS = new ArrayList<>();
+    private static final List<MetricCounter> COUNTERS = new ArrayList<>();
+
+    public static final LatencyHistogram SPAWN_POSITION = timer("LostWorldGenerator.getSpawnPosition");
+    public static final LatencyHistogram PLAYER_SPAWN = timer("OnSpawnSystem.onPlayerSpawn");
+    public static final LatencyHistogram HUT_SEARCH = timer("OnSpawnSystem hut search");
+    public static final LatencyHistogram BIOME_CHANGE = timer("LevelSpawnSystem.onBiomeChange");
+    public static final LatencyHistogram LEVEL_SITE_LOOKUP = timer("LevelSpawnSystem level site lookup");
+    public static final LatencyHistogram LEVEL_SPAWN_TICK = timer("LevelSpawnSystem.update");
+    public static final LatencyHistogram SPAWN_LEVEL = timer("StructureSpawnScheduler.spawnLevel");
+    public static final LatencyHistogram STRUCTURE_SPAWN_TICK = timer("StructureSpawnScheduler.update");
+    public static final LatencyHistogram ACTIVATE_PORTAL = timer("LostPortalSystem.activatePortal");
+    public static final LatencyHistogram SIMULATED_BIOME_LOOKUP = timer("LostLoadSimulationSystem biome lookup");
+
+    public static final MetricCounter FACET_COLUMNS = counter("facet columns generated");
+    public static final MetricCounter FACET_TILE_HITS = counter("facet tile cache hits");
+    public static final MetricCounter FACET_TILE_MISSES = counter("facet tile cache misses");
+    public static final MetricCounter FACET_TILE_EVICTIONS = counter("facet tile cache evictions");
+    public static final MetricCounter LEVEL_SITES_PREDICTED = counter("level sites predicted");
+    public static final MetricCounter STRUCTURES_SPAWNED = counter("structures spawned");
+    public static final MetricCounter STRUCTURE_BLOCKS = counter("structure blocks placed");
+
+    private static volatile boolean enabled;
+
+    private LostMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        LostMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return the start time to pass to {@link LatencyHistogram#stop(long)}, 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void reset() {
+        TIMERS.forEach(LatencyHistogram::reset);
+        COUNTERS.forEach(MetricCounter::reset);
+    }
+
+    /**
+     * @return a human readable table of all timers, with times in milliseconds, and counters
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Lost metrics (%s)%n", enabled ? "enabled" : "disabled"));
+        report.append(String.format("%-40s %8s %9s %9s %9s %9s %9s%n", "timer", "count", "mean", "p50", "p90", "p99",
+                "max"));
+        for (LatencyHistogram timer : TIMERS) {
+            report.append(String.format("%-40s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n", timer.getName(), timer.getCount(),
+                    toMillis(timer.getMean()), toMillis(timer.getPercentile(50)), toMillis(timer.getPercentile(90)),
+                    toMillis(timer.getPercentile(99)), toMillis(timer.getMax())));
+        }
+        for (MetricCounter counter : COUNTERS) {
+            report.append(String.format("%-40s %8d%n", counter.getName(), counter.get()));
+        }
+        return report.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static LatencyHistogram timer(String name) {
+        LatencyHistogram timer = new LatencyHistogram(name);
+        TIMERS.add(timer);
+        return timer;
+    }
+
+    private static MetricCounter counter(String name) {
+        MetricCounter counter = new MetricCounter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+}
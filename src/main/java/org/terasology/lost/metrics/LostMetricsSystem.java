@@ -0,0 +1,43 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.metrics;
+
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.registry.In;
+import org.terasology.lost.StructureSpawnScheduler;
+
+/**
+ * Console commands to control and read the {@link LostMetrics} on the server. The report also shows the current
+ * depth of the structure spawn queue.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class LostMetricsSystem extends BaseComponentSystem {
+    @In
+    private StructureSpawnScheduler structureSpawnScheduler;
+
+    @Command(shortDescription = "Prints timing percentiles and counters of the Lost systems", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostMetrics() {
+        return LostMetrics.report()
+                + String.format("%-40s %8d%n", "structure spawn queue depth", structureSpawnScheduler.getQueueDepth());
+    }
+
+    @Command(shortDescription = "Enables or disables recording of the Lost metrics", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostMetricsEnable(@CommandParam("enabled") boolean enabled) {
+        LostMetrics.setEnabled(enabled);
+        return "Lost metrics " + (enabled ? "enabled" : "disabled");
+    }
+
+    @Command(shortDescription = "Clears all recorded Lost metrics", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String lostMetricsReset() {
+        LostMetrics.reset();
+        return "Lost metrics cleared";
+    }
+}
@@ -0,0 +1,39 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events or amounts, nothing is counted while {@link LostMetrics} are disabled.
+ */
+public class MetricCounter {
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    MetricCounter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long amount) {
+        if (LostMetrics.isEnabled()) {
+            value.add(amount);
+        }
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    public void reset() {
+        value.reset();
+    }
+}
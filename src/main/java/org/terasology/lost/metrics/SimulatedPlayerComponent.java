@@ -0,0 +1,16 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.metrics;
+
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Marks the players of the {@link LostLoadSimulationSystem}. The Lost systems handle their events like those of any
+ * other player, but skip the side effects which would outlive the simulation: items, huts, staged level sites and
+ * cached positions.
+ */
+public class SimulatedPlayerComponent implements Component<SimulatedPlayerComponent> {
+    @Override
+    public void copyFrom(SimulatedPlayerComponent other) {
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.terasology.engine.utilities.Assets;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Settings of the portal travel, read from the {@code Lost:portalConfig} prefab. Servers can tune them by overriding
+ * the prefab.
+ */
+public class LostPortalConfigComponent implements Component<LostPortalConfigComponent> {
+    public static final String PREFAB = "Lost:portalConfig";
+
+    // chunks around the destination, horizontally, which have to be loaded before the player is moved there
+    public int warmUpRadius = 2;
+    // seconds after which the travel is cancelled if the destination still isn't loaded
+    public float warmUpTimeout = 30;
+
+    /**
+     * @return the configuration of the prefab, or the defaults if there is none
+     */
+    public static LostPortalConfigComponent load() {
+        LostPortalConfigComponent config = Assets.getPrefab(PREFAB)
+                .map(prefab -> prefab.getComponent(LostPortalConfigComponent.class))
+                .orElse(null);
+        return config != null ? config : new LostPortalConfigComponent();
+    }
+
+    @Override
+    public void copyFrom(LostPortalConfigComponent other) {
+        this.warmUpRadius = other.warmUpRadius;
+        this.warmUpTimeout = other.warmUpTimeout;
+    }
+}
@@ -15,119 +15,173 @@
  */
 package org.terasology.lost.portal;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.joml.RoundingMode;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terasology.engine.entitySystem.entity.EntityBuilder;
+import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.characters.CharacterComponent;
 import org.terasology.engine.logic.characters.CharacterHeldItemComponent;
+import org.terasology.engine.logic.characters.CharacterTeleportEvent;
 import org.terasology.engine.logic.common.ActivateEvent;
 import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.logic.notifications.NotificationMessageEvent;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.permission.PermissionManager;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.OnChangedBlock;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockRegion;
 import org.terasology.engine.world.block.items.BlockItemComponent;
+import org.terasology.engine.world.chunks.ChunkProvider;
+import org.terasology.engine.world.chunks.Chunks;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.lost.LostBlocks;
+import org.terasology.lost.ProgressTrackingComponent;
+import org.terasology.lost.generator.LostWorldQueryService;
+import org.terasology.lost.metrics.LostMetrics;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class LostPortalSystem extends BaseComponentSystem {
+public class LostPortalSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
 
     private static final Logger logger = LoggerFactory.getLogger(LostPortalSystem.class);
     @In
+    private WorldProvider worldProvider;
+    @In
+    private LostBlocks lostBlocks;
+    @In
     private BlockEntityRegistry blockEntityRegistry;
+    @In
+    private EntityManager entityManager;
+    @In
+    private ChunkProvider chunkProvider;
+    @In
+    private LostWorldQueryService worldQueryService;
+
+    private Block arkenstone;
+    private Block plasma;
+    private Block facade;
+    private PortalFrameIndex portalFrameIndex;
+    private LostPortalConfigComponent config;
+    // players waiting for their destination to be loaded
+    private final Map<EntityRef, PortalTravel> travels = new LinkedHashMap<>();
+    // resolves the surface height at the huts players travel back to, which may have to generate facets
+    private ExecutorService heightResolver;
+    // travels whose destination height is resolved, started on the game thread
+    private final Queue<Runnable> resolvedTravels = new ConcurrentLinkedQueue<>();
+    // players waiting for the height of their destination to be resolved
+    private final Set<EntityRef> resolving = new HashSet<>();
+
+    @Override
+    public void initialise() {
+        heightResolver = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Lost-portal-destinations-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void postBegin() {
+        arkenstone = lostBlocks.getArkenstone();
+        plasma = lostBlocks.getShatteredPlasma();
+        facade = lostBlocks.getFacadeOfTruth();
+        config = LostPortalConfigComponent.load();
+        portalFrameIndex = new PortalFrameIndex(createFramePattern(plasma.getId(), facade.getId()));
+    }
+
+    /**
+     * @return the portal frame around the key: 8 blocks of plasma around it, with a gate of facade standing on them
+     */
+    static MultiblockPattern createFramePattern(short plasmaId, short facadeId) {
+        MultiblockPattern.Builder frame = MultiblockPattern.builder();
+        // facade first, it tells the rotations apart
+        frame.add(1, 1, 0, facadeId).add(-1, 1, 0, facadeId).add(1, 2, 0, facadeId).add(-1, 2, 0, facadeId);
+        for (int i = -1; i <= 1; i++) {
+            frame.add(i, 3, 0, facadeId);
+        }
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (i != 0 || j != 0) {
+                    frame.add(i, 0, j, plasmaId);
+                }
+            }
+        }
+        return frame.build();
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockChanged(OnChangedBlock event, EntityRef entity) {
+        Block oldBlock = event.getOldType();
+        Block newBlock = event.getNewType();
+        if (oldBlock == arkenstone) {
+            portalFrameIndex.removeKey(event.getBlockPosition());
+        }
+        List<Vector3i> completed = Collections.emptyList();
+        if (newBlock == arkenstone) {
+            if (portalFrameIndex.addKey(worldProvider, event.getBlockPosition())) {
+                completed = Collections.singletonList(new Vector3i(event.getBlockPosition()));
+            }
+        } else if (isFrameBlock(oldBlock) || isFrameBlock(newBlock)) {
+            completed = portalFrameIndex.onFrameBlockChanged(worldProvider, event.getBlockPosition());
+        }
+        for (Vector3i key : completed) {
+            logger.info("Portal frame completed at {}", key);
+            blockEntityRegistry.getBlockEntityAt(key).send(new PortalFrameCompletedEvent());
+        }
+    }
+
+    @Command(shortDescription = "Lists the positions of all complete Lost portal frames", runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String listPortals() {
+        List<Vector3i> frames = portalFrameIndex.getCompleteFrames();
+        if (frames.isEmpty()) {
+            return "No complete portal frames";
+        }
+        return frames.stream().map(Vector3i::toString).collect(Collectors.joining("\n"));
+    }
 
     @ReceiveEvent(components = {ArkenstoneComponent.class})
     public void onActivate(ActivateEvent event, EntityRef entity) {
         EntityRef player = event.getInstigator();
         CharacterHeldItemComponent characterHeldItemComponent = player.getComponent(CharacterHeldItemComponent.class);
         EntityRef heldItem = characterHeldItemComponent.selectedItem;
-        if (!heldItem.hasComponent(BlockItemComponent.class)) {
-            return;
-        }
-        if (!heldItem.getComponent(BlockItemComponent.class).blockFamily.getURI().toString()
-            .equalsIgnoreCase("Lost:ObsidianTorch")) {
+        BlockItemComponent blockItem = heldItem.getComponent(BlockItemComponent.class);
+        if (blockItem == null || !lostBlocks.isObsidianTorch(blockItem.blockFamily)) {
             return;
         }
+        long start = LostMetrics.start();
         activatePortal(event.getTargetLocation(), event.getInstigator());
+        LostMetrics.ACTIVATE_PORTAL.stop(start);
     }
 
     private void activatePortal(Vector3f keyLocation, EntityRef player) {
-        EntityRef block;
-        // Check for surrounding 8 blocks of shattered plasma
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                if (i == 0 && j == 0) {
-                    continue;
-                }
-                block = blockEntityRegistry.getBlockEntityAt(new Vector3f(i, 0, j).add(keyLocation));
-                if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                    .equalsIgnoreCase("Lost:ShatteredPlasma")) {
-                    return;
-                }
-            }
-        }
-
-        // Checking for orientation of facade
-        block = blockEntityRegistry.getBlockEntityAt(new Vector3f(1, 1, 0).add(keyLocation));
-        if (block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-            .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(-1, 1, 0).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(1, 2, 0).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(-1, 2, 0).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            for (int i = -1; i <= 1; i++) {
-                block = blockEntityRegistry.getBlockEntityAt(new Vector3f(i, 3, 0).add(keyLocation));
-                if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                    .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                    return;
-                }
-            }
-        } else {
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(0, 1, 1).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(0, 1, -1).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(0, 2, 1).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            block = blockEntityRegistry.getBlockEntityAt(new Vector3f(0, 2, -1).add(keyLocation));
-            if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                return;
-            }
-            for (int i = -1; i <= 1; i++) {
-                block = blockEntityRegistry.getBlockEntityAt(new Vector3f(0, 3, i).add(keyLocation));
-                if (!block.getComponent(BlockComponent.class).getBlock().getURI().toString()
-                    .equalsIgnoreCase("Lost:FacadeOfTruth")) {
-                    return;
-                }
-            }
+        // the key has to be surrounded by 8 blocks of shattered plasma, with the facade standing on them
+        Vector3i key = new Vector3i(keyLocation, RoundingMode.HALF_UP);
+        if (!portalFrameIndex.isComplete(worldProvider, key)) {
+            return;
         }
         Vector3f playerWorldLocation = player.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
         Vector3i roundedKeyPosition = new Vector3i(new Vector3f(keyLocation.x, keyLocation.y, keyLocation.z), RoundingMode.FLOOR);
@@ -136,8 +190,188 @@ public class LostPortalSystem extends BaseComponentSystem {
             roundedPlayerPosition.equals(new Vector3i(0, 2, 0).add(roundedKeyPosition))) {
             return;
         }
-        logger.info("Portal active");
+        if (travels.containsKey(player) || resolving.contains(player)) {
+            return;
+        }
+        Vector3f destination = getPortalDestination(key);
+        if (destination != null) {
+            beginTravel(player, destination);
+            return;
+        }
+        ProgressTrackingComponent progress = player.getComponent(ProgressTrackingComponent.class);
+        if (progress == null) {
+            notify(player, "The portal leads nowhere yet");
+            return;
+        }
+        // back to the hut, whose surface height is resolved on a worker, as the facets there may not be generated
+        Vector3i hut = progress.getHutPosition(new Vector3i());
+        resolving.add(player);
+        heightResolver.execute(() -> {
+            try {
+                int height = worldQueryService.getSurfaceHeightsOfArea(hut.x, hut.z, 1, 1)[0];
+                resolvedTravels.add(() -> {
+                    resolving.remove(player);
+                    if (player.exists()) {
+                        beginTravel(player, new Vector3f(hut.x, height + 1, hut.z));
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.error("Could not resolve the portal destination at the hut {}", hut, e);
+                resolvedTravels.add(() -> resolving.remove(player));
+            }
+        });
+    }
+
+    private void beginTravel(EntityRef player, Vector3f destination) {
+        logger.info("Portal active, travelling to {}", destination);
+        travels.put(player, startTravel(player, destination));
+        notify(player, "Portal activated!");
+    }
+
+    /**
+     * Moves the players whose destinations are loaded, and gives up on those which took too long.
+     */
+    @Override
+    public void update(float delta) {
+        Runnable resolvedTravel;
+        while ((resolvedTravel = resolvedTravels.poll()) != null) {
+            resolvedTravel.run();
+        }
+        Iterator<PortalTravel> iterator = travels.values().iterator();
+        while (iterator.hasNext()) {
+            PortalTravel travel = iterator.next();
+            travel.elapsed += delta;
+            if (!travel.player.exists()) {
+                endTravel(travel);
+                iterator.remove();
+                continue;
+            }
+            travel.loadedChunks = countLoadedChunks(travel.area);
+            if (travel.loadedChunks == travel.totalChunks) {
+                travel.player.send(new CharacterTeleportEvent(travel.destination));
+                endTravel(travel);
+                iterator.remove();
+            } else if (travel.elapsed > config.warmUpTimeout) {
+                logger.warn("Portal travel to {} cancelled, only {} of {} chunks were loaded", travel.destination,
+                        travel.loadedChunks, travel.totalChunks);
+                notify(travel.player, "The portal fades, its destination is out of reach");
+                endTravel(travel);
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        heightResolver.shutdownNow();
+        resolvedTravels.clear();
+        resolving.clear();
+        for (PortalTravel travel : travels.values()) {
+            endTravel(travel);
+        }
+        travels.clear();
+    }
+
+    @Command(shortDescription = "Lists the players travelling through Lost portals and how far their destinations "
+            + "are loaded", runOnServer = true, requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String listPortalTravels() {
+        if (travels.isEmpty()) {
+            return "Nobody is travelling";
+        }
+        return travels.values().stream()
+                .map(travel -> String.format("%s to %s: %d/%d chunks, %.1fs", travel.player, travel.destination,
+                        travel.loadedChunks, travel.totalChunks, travel.elapsed))
+                .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Finds the nearest other complete portal, which the portal with the given key leads into. Without one the player
+     * is taken back to their hut instead.
+     *
+     * @return the position the player is moved to, null if there is no other portal
+     */
+    private Vector3f getPortalDestination(Vector3i key) {
+        Vector3i nearest = null;
+        for (Vector3i frame : portalFrameIndex.getCompleteFrames()) {
+            if (!frame.equals(key) && (nearest == null || frame.distanceSquared(key) < nearest.distanceSquared(key))) {
+                nearest = frame;
+            }
+        }
+        // on top of the key of the other portal
+        return nearest != null ? new Vector3f(nearest.x, nearest.y + 1, nearest.z) : null;
+    }
+
+    /**
+     * Makes the chunk provider load and generate the chunks around the destination in the background, by adding a
+     * temporary relevance entity there.
+     */
+    private PortalTravel startTravel(EntityRef player, Vector3f destination) {
+        EntityBuilder builder = entityManager.newBuilder();
+        builder.setPersistent(false);
+        builder.addComponent(new LocationComponent(destination));
+        EntityRef anchor = builder.build();
+        int radius = Math.max(0, config.warmUpRadius);
+        chunkProvider.addRelevanceEntity(anchor, new Vector3i(2 * radius + 1, 3, 2 * radius + 1));
+        BlockRegion area = new BlockRegion(new Vector3i(destination, RoundingMode.FLOOR))
+                .expand(radius * Chunks.SIZE_X, Chunks.SIZE_Y, radius * Chunks.SIZE_Z);
+        return new PortalTravel(player, destination, anchor, area);
+    }
+
+    private void endTravel(PortalTravel travel) {
+        chunkProvider.removeRelevanceEntity(travel.anchor);
+        travel.anchor.destroy();
+    }
+
+    private int countLoadedChunks(BlockRegion area) {
+        BlockRegion chunks = toChunkRegion(area);
+        int loaded = 0;
+        for (Vector3ic chunk : chunks) {
+            if (worldProvider.isBlockRelevant(chunk.x() * Chunks.SIZE_X, chunk.y() * Chunks.SIZE_Y,
+                    chunk.z() * Chunks.SIZE_Z)) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the positions of the chunks the given blocks are in
+     */
+    private static BlockRegion toChunkRegion(BlockRegion area) {
+        return new BlockRegion(Math.floorDiv(area.minX(), Chunks.SIZE_X), Math.floorDiv(area.minY(), Chunks.SIZE_Y),
+                Math.floorDiv(area.minZ(), Chunks.SIZE_Z), Math.floorDiv(area.maxX(), Chunks.SIZE_X),
+                Math.floorDiv(area.maxY(), Chunks.SIZE_Y), Math.floorDiv(area.maxZ(), Chunks.SIZE_Z));
+    }
+
+    private static void notify(EntityRef player, String message) {
         EntityRef client = player.getComponent(CharacterComponent.class).controller;
-        client.send(new NotificationMessageEvent("Portal activated!", client));
+        client.send(new NotificationMessageEvent(message, client));
+    }
+
+    private boolean isFrameBlock(Block block) {
+        return block == plasma || block == facade;
+    }
+
+    /**
+     * A player waiting for the chunks around their destination to be loaded.
+     */
+    private static final class PortalTravel {
+        private final EntityRef player;
+        private final Vector3f destination;
+        // keeps the chunks around the destination loaded until the player arrives
+        private final EntityRef anchor;
+        // the blocks which have to be loaded before the player is moved
+        private final BlockRegion area;
+        private final int totalChunks;
+        private int loadedChunks;
+        private float elapsed;
+
+        private PortalTravel(EntityRef player, Vector3f destination, EntityRef anchor, BlockRegion area) {
+            this.player = player;
+            this.destination = destination;
+            this.anchor = anchor;
+            this.area = area;
+            this.totalChunks = toChunkRegion(area).volume();
+        }
     }
 }
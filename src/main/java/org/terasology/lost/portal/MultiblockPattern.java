@@ -0,0 +1,156 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.joml.Vector3ic;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A structure made of several blocks, defined by the blocks expected at offsets relative to an origin block. A pattern
+ * matches in any of the four rotations around the vertical axis. Matching compares the ids of the blocks returned by
+ * {@link WorldProvider#getBlock(int, int, int)}, so no block entities are created, and stops at the first mismatch.
+ */
+public final class MultiblockPattern {
+    // per distinct rotation the offsets as consecutive x, y, z triples
+    private final int[][] rotations;
+    // the block ids expected at the offsets, in the same order
+    private final short[] blockIds;
+
+    private MultiblockPattern(List<int[]> offsets, List<Short> blocks) {
+        blockIds = new short[blocks.size()];
+        for (int i = 0; i < blockIds.length; i++) {
+            blockIds[i] = blocks.get(i);
+        }
+        List<int[]> distinctRotations = new ArrayList<>();
+        List<long[]> distinctShapes = new ArrayList<>();
+        for (int rotation = 0; rotation < 4; rotation++) {
+            int[] rotated = new int[offsets.size() * 3];
+            for (int i = 0; i < offsets.size(); i++) {
+                int[] offset = offsets.get(i);
+                int x = offset[0];
+                int z = offset[2];
+                // rotate by 90 degrees per step: (x, z) -> (-z, x)
+                for (int step = 0; step < rotation; step++) {
+                    int oldX = x;
+                    x = -z;
+                    z = oldX;
+                }
+                rotated[i * 3] = x;
+                rotated[i * 3 + 1] = offset[1];
+                rotated[i * 3 + 2] = z;
+            }
+            // symmetric patterns would otherwise be checked twice; a rotation may list the same blocks in another
+            // order, e.g. (1, 1, 0) turns into (-1, 1, 0) by half a turn, so the blocks are compared as a set
+            long[] shape = getShape(rotated, blockIds);
+            if (distinctShapes.stream().noneMatch(other -> Arrays.equals(other, shape))) {
+                distinctShapes.add(shape);
+                distinctRotations.add(rotated);
+            }
+        }
+        rotations = distinctRotations.toArray(new int[0][]);
+    }
+
+    /**
+     * @return the offsets and their blocks packed into one value each, sorted
+     */
+    private static long[] getShape(int[] offsets, short[] blockIds) {
+        long[] shape = new long[blockIds.length];
+        for (int i = 0; i < blockIds.length; i++) {
+            shape[i] = (offsets[i * 3] & 0xFFFFL) << 48 | (offsets[i * 3 + 1] & 0xFFFFL) << 32
+                    | (offsets[i * 3 + 2] & 0xFFFFL) << 16 | blockIds[i] & 0xFFFFL;
+        }
+        Arrays.sort(shape);
+        return shape;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks whether the pattern is present, in any rotation, with its origin at the given position.
+     */
+    public boolean matches(WorldProvider worldProvider, Vector3ic origin) {
+        return getMatchingRotation(worldProvider, origin) >= 0;
+    }
+
+    /**
+     * @return the index of the first distinct rotation of the pattern present at the given origin, -1 if none is
+     */
+    public int getMatchingRotation(WorldProvider worldProvider, Vector3ic origin) {
+        return getMatchingRotation((x, y, z) -> worldProvider.getBlock(x, y, z).getId(), origin);
+    }
+
+    /**
+     * @return the index of the first distinct rotation of the pattern present at the given origin, -1 if none is
+     */
+    public int getMatchingRotation(BlockIdLookup blocks, Vector3ic origin) {
+        for (int rotation = 0; rotation < rotations.length; rotation++) {
+            if (matches(blocks, origin, rotations[rotation])) {
+                return rotation;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(BlockIdLookup blocks, Vector3ic origin, int[] offsets) {
+        for (int i = 0; i < blockIds.length; i++) {
+            short blockId = blocks.getBlockId(origin.x() + offsets[i * 3], origin.y() + offsets[i * 3 + 1],
+                    origin.z() + offsets[i * 3 + 2]);
+            if (blockId != blockIds[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of distinct rotations checked when matching
+     */
+    int getRotationCount() {
+        return rotations.length;
+    }
+
+    /**
+     * Source of the blocks a pattern is matched against, e.g. the world or a block store of its own.
+     */
+    @FunctionalInterface
+    public interface BlockIdLookup {
+        short getBlockId(int x, int y, int z);
+    }
+
+    public static final class Builder {
+        private final List<int[]> offsets = new ArrayList<>();
+        private final List<Short> blocks = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Expects the given block at the given offset from the origin. Blocks are checked in the order they are added,
+         * so the ones most likely to differ should come first.
+         */
+        public Builder add(int x, int y, int z, Block block) {
+            return add(x, y, z, block.getId());
+        }
+
+        /**
+         * Expects the block with the given id at the given offset from the origin, e.g. for patterns matched against a
+         * block store of their own.
+         */
+        public Builder add(int x, int y, int z, short blockId) {
+            offsets.add(new int[]{x, y, z});
+            blocks.add(blockId);
+            return this;
+        }
+
+        public MultiblockPattern build() {
+            return new MultiblockPattern(offsets, blocks);
+        }
+    }
+}
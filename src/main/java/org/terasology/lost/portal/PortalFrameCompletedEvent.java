@@ -0,0 +1,11 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * Sent to the Arkenstone block entity of a portal frame once all blocks of the frame have been placed.
+ */
+public class PortalFrameCompletedEvent implements Event {
+}
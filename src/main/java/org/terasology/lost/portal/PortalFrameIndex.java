@@ -0,0 +1,97 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.world.WorldProvider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the portal frames in the world, keyed by the position of their Arkenstone, and whether they are
+ * complete. The index is updated incrementally as blocks of a frame change, so that activating a portal or listing the
+ * complete ones doesn't require checking the blocks again.
+ */
+public class PortalFrameIndex {
+    // how far the blocks of a frame reach from its key, horizontally in any rotation and upwards
+    private static final int HORIZONTAL_REACH = 1;
+    private static final int VERTICAL_REACH = 3;
+
+    private final MultiblockPattern frame;
+    private final Map<Vector3i, Boolean> frames = new HashMap<>();
+
+    public PortalFrameIndex(MultiblockPattern frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Adds the frame with its key at the given position, or checks it again if it is known already.
+     *
+     * @return true if the frame just became complete
+     */
+    public boolean addKey(WorldProvider worldProvider, Vector3ic key) {
+        return update(worldProvider, new Vector3i(key));
+    }
+
+    public void removeKey(Vector3ic key) {
+        frames.remove(new Vector3i(key));
+    }
+
+    /**
+     * Checks all known frames which the block at the given position could be part of again.
+     *
+     * @return the keys of the frames which just became complete
+     */
+    public List<Vector3i> onFrameBlockChanged(WorldProvider worldProvider, Vector3ic position) {
+        List<Vector3i> completed = new ArrayList<>();
+        Vector3i key = new Vector3i();
+        for (int x = -HORIZONTAL_REACH; x <= HORIZONTAL_REACH; x++) {
+            for (int y = -VERTICAL_REACH; y <= 0; y++) {
+                for (int z = -HORIZONTAL_REACH; z <= HORIZONTAL_REACH; z++) {
+                    key.set(position).add(x, y, z);
+                    if (frames.containsKey(key) && update(worldProvider, key)) {
+                        completed.add(new Vector3i(key));
+                    }
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Returns whether the frame with its key at the given position is complete. Frames which are not indexed yet, e.g.
+     * because they were built before the index existed, are checked and added.
+     */
+    public boolean isComplete(WorldProvider worldProvider, Vector3ic key) {
+        Vector3i position = new Vector3i(key);
+        Boolean complete = frames.get(position);
+        if (complete == null) {
+            update(worldProvider, position);
+            complete = frames.get(position);
+        }
+        return complete;
+    }
+
+    /**
+     * @return the keys of all complete frames
+     */
+    public List<Vector3i> getCompleteFrames() {
+        List<Vector3i> complete = new ArrayList<>();
+        frames.forEach((key, isComplete) -> {
+            if (isComplete) {
+                complete.add(new Vector3i(key));
+            }
+        });
+        return complete;
+    }
+
+    private boolean update(WorldProvider worldProvider, Vector3i key) {
+        boolean complete = frame.matches(worldProvider, key);
+        Boolean previous = frames.put(new Vector3i(key), complete);
+        return complete && !Boolean.TRUE.equals(previous);
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.polyworld.biome.WhittakerBiome;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the conversion of the progress stored by earlier versions, whose map held the display name of every level
+ * biome and lost the prefab of a level once it was spawned.
+ */
+@SuppressWarnings("deprecation")
+public class ProgressTrackingComponentTest {
+
+    @Test
+    public void convertsSpawnedLevelsWithNullPrefabs() {
+        ProgressTrackingComponent progress = legacyProgress();
+        for (WhittakerBiome biome : new WhittakerBiome[]{WhittakerBiome.BEACH, WhittakerBiome.COAST,
+                WhittakerBiome.LAKESHORE}) {
+            progress.biomeToPrefab.put(biome.getDisplayName(), null);
+        }
+        assertTrue(progress.migrateLegacyFields());
+        assertTrue(progress.isLevelDiscovered(LostLevel.WELL));
+        assertFalse(progress.isLevelDiscovered(LostLevel.TEMPLE));
+        assertNull(progress.biomeToPrefab);
+    }
+
+    @Test
+    public void convertsSpawnedLevelsWhoseBiomesWereDropped() {
+        ProgressTrackingComponent progress = legacyProgress();
+        for (WhittakerBiome biome : new WhittakerBiome[]{WhittakerBiome.MARSH, WhittakerBiome.SHRUBLAND,
+                WhittakerBiome.GRASSLAND}) {
+            progress.biomeToPrefab.remove(biome.getDisplayName());
+        }
+        progress.migrateLegacyFields();
+        assertTrue(progress.isLevelDiscovered(LostLevel.STONEHENGE));
+        assertFalse(progress.isLevelDiscovered(LostLevel.PYRAMID));
+    }
+
+    @Test
+    public void convertsWellAndHut() {
+        ProgressTrackingComponent progress = legacyProgress();
+        progress.foundWell = true;
+        progress.hutPosition = new Vector3i(-120, 17, 45);
+        progress.migrateLegacyFields();
+        assertTrue(progress.isWellFound());
+        assertEquals(new Vector3i(-120, 0, 45), progress.getHutPosition(new Vector3i()));
+        assertNull(progress.hutPosition);
+    }
+
+    @Test
+    public void leavesCurrentProgressAlone() {
+        ProgressTrackingComponent progress = new ProgressTrackingComponent();
+        progress.setLevelDiscovered(LostLevel.TEMPLE);
+        assertFalse(progress.migrateLegacyFields());
+        assertEquals(LostLevel.TEMPLE.getMask(), progress.discoveredLevels);
+    }
+
+    /**
+     * @return the progress of a player who has just spawned in an earlier version
+     */
+    private static ProgressTrackingComponent legacyProgress() {
+        ProgressTrackingComponent progress = new ProgressTrackingComponent();
+        Map<String, String> biomeToPrefab = new HashMap<>();
+        for (WhittakerBiome biome : WhittakerBiome.values()) {
+            LostLevel level = LostLevel.forBiome(biome);
+            if (level != null) {
+                biomeToPrefab.put(biome.getDisplayName(), level.getPrefab());
+            }
+        }
+        progress.biomeToPrefab = biomeToPrefab;
+        return progress;
+    }
+}
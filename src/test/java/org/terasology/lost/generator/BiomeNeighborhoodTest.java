@@ -0,0 +1,171 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.generator;
+
+import org.joml.Vector2f;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.polyworld.biome.BiomeModel;
+import org.terasology.polyworld.biome.WhittakerBiome;
+import org.terasology.polyworld.graph.Graph;
+import org.terasology.polyworld.graph.GraphRegion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the bitmask rules of {@link SpawnRegionFinder} against the nested loops the spawn search used before, on
+ * small hand-built graphs.
+ */
+public class BiomeNeighborhoodTest {
+    private static final int SIZE = 12;
+    private static final int GRAPHS = 50;
+
+    @Test
+    public void matchesNestedLoopsForEveryRegion() {
+        Random random = new Random(42);
+        int spawnRegions = 0;
+        for (int i = 0; i < GRAPHS; i++) {
+            TestGraph graph = new TestGraph(random);
+            BiomeNeighborhood neighborhood = BiomeNeighborhood.of(graph.graph, graph.biomeModel);
+            List<GraphRegion> regions = graph.graph.getRegions();
+            for (int index = 0; index < regions.size(); index++) {
+                boolean expected = isSpawnRegionByNestedLoops(regions.get(index), graph.biomeModel);
+                assertEquals(expected, SpawnRegionFinder.isSpawnRegion(neighborhood, index),
+                        "graph " + i + ", region " + index);
+                spawnRegions += expected ? 1 : 0;
+            }
+        }
+        // the graphs have to contain both outcomes for the comparison to mean anything
+        assertTrue(spawnRegions > 0 && spawnRegions < GRAPHS * SIZE * SIZE);
+    }
+
+    @Test
+    public void picksTheSameSpawnAsNestedLoops() {
+        Random random = new Random(7);
+        for (int i = 0; i < GRAPHS; i++) {
+            TestGraph graph = new TestGraph(random);
+            Set<GraphRegion> levelSites = SpawnRegionFinder.getLevelSiteSurroundings(
+                    LevelSitePlanner.of(graph.graph, graph.biomeModel));
+            GraphRegion expected = null;
+            for (GraphRegion region : graph.graph.getRegions()) {
+                if (isSpawnRegionByNestedLoops(region, graph.biomeModel) && !levelSites.contains(region)) {
+                    expected = region;
+                    break;
+                }
+            }
+            List<GraphRegion> found = new ArrayList<>();
+            SpawnRegionFinder.collectSpawnRegions(graph.graph, graph.biomeModel,
+                    new BlockRegion(-1, 0, -1, SIZE * 10, 0, SIZE * 10), found);
+            assertEquals(expected, found.isEmpty() ? null : found.get(0), "graph " + i);
+        }
+    }
+
+    /**
+     * The spawn check as it was done before the neighbourhood bitmasks.
+     */
+    private static boolean isSpawnRegionByNestedLoops(GraphRegion r, BiomeModel biomeModel) {
+        WhittakerBiome biome = biomeModel.getBiome(r);
+        boolean ocean = false;
+        boolean forest = false;
+        boolean desert = false;
+        if (biomeModel.getBiome(r).equals(WhittakerBiome.OCEAN)) {
+            return false;
+        }
+        if (isDesertBiome(r, biomeModel)) {
+            desert = true;
+        }
+        if (isForestBiome(r, biomeModel)) {
+            forest = true;
+        }
+        for (GraphRegion neighbour : r.getNeighbors()) {
+            if (biomeModel.getBiome(neighbour).equals(WhittakerBiome.OCEAN)) {
+                ocean = true;
+                break;
+            }
+            if (isDesertBiome(neighbour, biomeModel)) {
+                desert = true;
+            }
+            if (isForestBiome(neighbour, biomeModel)) {
+                forest = true;
+            }
+            for (GraphRegion neighbour2 : neighbour.getNeighbors()) {
+                if (isForestBiome(neighbour2, biomeModel)) {
+                    forest = true;
+                }
+                if (isDesertBiome(neighbour2, biomeModel)) {
+                    desert = true;
+                }
+            }
+        }
+        if (ocean || !forest || !desert) {
+            return false;
+        }
+        return !biome.equals(WhittakerBiome.OCEAN) && !biome.equals(WhittakerBiome.LAKE)
+                && !biome.equals(WhittakerBiome.BEACH);
+    }
+
+    private static boolean isForestBiome(GraphRegion region, BiomeModel biomeModel) {
+        WhittakerBiome biome = biomeModel.getBiome(region);
+        return biome == WhittakerBiome.TROPICAL_SEASONAL_FOREST || biome == WhittakerBiome.TEMPERATE_RAIN_FOREST
+                || biome == WhittakerBiome.TEMPERATE_DECIDUOUS_FOREST || biome == WhittakerBiome.TROPICAL_RAIN_FOREST;
+    }
+
+    private static boolean isDesertBiome(GraphRegion region, BiomeModel biomeModel) {
+        WhittakerBiome biome = biomeModel.getBiome(region);
+        return biome == WhittakerBiome.TEMPERATE_DESERT || biome == WhittakerBiome.SUBTROPICAL_DESERT;
+    }
+
+    /**
+     * A square grid of regions, each a neighbour of the regions around it, with random biomes.
+     */
+    private static final class TestGraph {
+        private final Graph graph = mock(Graph.class);
+        private final BiomeModel biomeModel = mock(BiomeModel.class);
+
+        private TestGraph(Random random) {
+            WhittakerBiome[] biomes = WhittakerBiome.values();
+            GraphRegion[][] grid = new GraphRegion[SIZE][SIZE];
+            List<GraphRegion> regions = new ArrayList<>();
+            Map<GraphRegion, WhittakerBiome> biomeOf = new HashMap<>();
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    GraphRegion region = mock(GraphRegion.class);
+                    when(region.getCenter()).thenReturn(new Vector2f(x * 10 + 5, z * 10 + 5));
+                    grid[x][z] = region;
+                    regions.add(region);
+                    biomeOf.put(region, biomes[random.nextInt(biomes.length)]);
+                }
+            }
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    List<GraphRegion> neighbours = new ArrayList<>();
+                    for (int dz = -1; dz <= 1; dz++) {
+                        for (int dx = -1; dx <= 1; dx++) {
+                            int nx = x + dx;
+                            int nz = z + dz;
+                            if ((dx != 0 || dz != 0) && nx >= 0 && nx < SIZE && nz >= 0 && nz < SIZE) {
+                                neighbours.add(grid[nx][nz]);
+                            }
+                        }
+                    }
+                    doReturn(neighbours).when(grid[x][z]).getNeighbors();
+                }
+            }
+            doReturn(regions).when(graph).getRegions();
+            for (Map.Entry<GraphRegion, WhittakerBiome> entry : biomeOf.entrySet()) {
+                when(biomeModel.getBiome(entry.getKey())).thenReturn(entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.lost.portal;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link MultiblockPattern} only keeps the rotations which differ as a set of blocks.
+ */
+public class MultiblockPatternTest {
+    private static final short PLASMA = 1;
+    private static final short FACADE = 2;
+
+    @Test
+    public void portalFrameHasTwoDistinctRotations() {
+        assertEquals(2, LostPortalSystem.createFramePattern(PLASMA, FACADE).getRotationCount());
+    }
+
+    @Test
+    public void asymmetricPatternHasFourDistinctRotations() {
+        MultiblockPattern pattern = MultiblockPattern.builder().add(1, 0, 0, PLASMA).add(0, 0, 2, FACADE).build();
+        assertEquals(4, pattern.getRotationCount());
+    }
+
+    @Test
+    public void symmetricPatternHasOneRotation() {
+        MultiblockPattern pattern = MultiblockPattern.builder().add(1, 0, 0, PLASMA).add(-1, 0, 0, PLASMA)
+                .add(0, 0, 1, PLASMA).add(0, 0, -1, PLASMA).build();
+        assertEquals(1, pattern.getRotationCount());
+    }
+
+    @Test
+    public void portalFrameMatchesBothOrientations() {
+        MultiblockPattern frame = LostPortalSystem.createFramePattern(PLASMA, FACADE);
+        Vector3i key = new Vector3i();
+        for (boolean alongZ : new boolean[]{false, true}) {
+            Map<Vector3i, Short> blocks = new HashMap<>();
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i != 0 || j != 0) {
+                        blocks.put(new Vector3i(i, 0, j), PLASMA);
+                    }
+                }
+            }
+            for (int i = -1; i <= 1; i++) {
+                for (int y = 1; y <= 3; y++) {
+                    if (i != 0 || y == 3) {
+                        blocks.put(alongZ ? new Vector3i(0, y, i) : new Vector3i(i, y, 0), FACADE);
+                    }
+                }
+            }
+            assertTrue(frame.getMatchingRotation((x, y, z) -> blocks.getOrDefault(new Vector3i(x, y, z), (short) 0),
+                    key) >= 0, alongZ ? "frame along z" : "frame along x");
+        }
+    }
+}